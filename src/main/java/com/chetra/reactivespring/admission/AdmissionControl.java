@@ -0,0 +1,185 @@
+package com.chetra.reactivespring.admission;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.metrics.CustomerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for the customer routes.
+ * Requests hold a permit from admission until their response is fully written,
+ * the number of permits is a {@link GradientLimit} learned from the latency of completed requests.
+ * Only point lookups and bounded queries teach it, listings and bulk writes take as long as their body is big,
+ * a slow stream says nothing about queueing and would shrink the limit under the lookups it is there to protect.
+ * Lower priorities may only use part of the limit so they are shed first,
+ * rejected requests fail fast with 503 and Retry-After instead of queueing
+ * */
+@Component
+public class AdmissionControl {
+    public enum Priority {
+        /** Cheap point lookups, may use the whole limit */
+        HIGH,
+        /** Single writes and bounded queries */
+        NORMAL,
+        /** Listings and bulk writes, their latency is not sampled */
+        LOW
+    }
+
+    private final CustomerProperties.Admission properties;
+    private final GradientLimit limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<Priority, Counter> admitted = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> rejected = new EnumMap<>(Priority.class);
+
+    public AdmissionControl(CustomerProperties properties, CustomerMetrics metrics) {
+        this.properties = properties.getAdmission();
+        this.limit = new GradientLimit(this.properties.getInitialLimit(), this.properties.getMinLimit(),
+                this.properties.getMaxLimit(), this.properties.getTolerance(), this.properties.getSmoothing(),
+                this.properties.getWindowSize());
+
+        MeterRegistry registry = metrics.getRegistry();
+        Gauge.builder("customer.admission.limit", limit, GradientLimit::getLimit).register(registry);
+        Gauge.builder("customer.admission.in.flight", inFlight, AtomicInteger::get).register(registry);
+        for (Priority priority : Priority.values()) {
+            admitted.put(priority, counter(registry, priority, "admitted"));
+            rejected.put(priority, counter(registry, priority, "rejected"));
+        }
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public HandlerFilterFunction<ServerResponse, ServerResponse> filter(Priority priority) {
+        if (!properties.isEnabled()) {
+            return (request, next) -> next.handle(request);
+        }
+
+        return (request, next) -> {
+            Permit permit = tryAcquire(priority);
+            if (permit == null) {
+                rejected.get(priority).increment();
+                return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, Long.toString(properties.getRetryAfter().toSeconds()))
+                        .build();
+            }
+
+            admitted.get(priority).increment();
+            return next.handle(request)
+                    .map(response -> (ServerResponse) new AdmittedResponse(response, permit))
+                    .doFinally(signal -> {
+                        if (!permit.handedOff) {
+                            permit.release(false);
+                        }
+                    });
+        };
+    }
+
+    private Permit tryAcquire(Priority priority) {
+        double share = switch (priority) {
+            case HIGH -> 1.0;
+            case NORMAL -> (1.0 + properties.getLowPriorityShare()) / 2;
+            case LOW -> properties.getLowPriorityShare();
+        };
+        int allowed = Math.max(1, (int) (limit.getLimit() * share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(current + 1, priority != Priority.LOW);
+            }
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, Priority priority, String outcome) {
+        return Counter.builder("customer.admission.requests")
+                .tag("priority", priority.name().toLowerCase())
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private final class Permit {
+        private final long start = System.nanoTime();
+        private final int inFlightAtStart;
+        private final boolean sampled;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean handedOff;
+
+        private Permit(int inFlightAtStart, boolean sampled) {
+            this.inFlightAtStart = inFlightAtStart;
+            this.sampled = sampled;
+        }
+
+        /**
+         * Only sampled requests that completed normally teach the limit about latency
+         * */
+        private void release(boolean completed) {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                if (completed && sampled) {
+                    limit.onSample(System.nanoTime() - start, inFlightAtStart);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the permit until the body, which may still be streaming, has been written
+     * */
+    private static final class AdmittedResponse implements ServerResponse {
+        private final ServerResponse response;
+        private final Permit permit;
+
+        private AdmittedResponse(ServerResponse response, Permit permit) {
+            this.response = response;
+            this.permit = permit;
+            permit.handedOff = true;
+        }
+
+        @Override
+        public HttpStatusCode statusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        @Deprecated
+        public int rawStatusCode() {
+            return response.rawStatusCode();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return response.headers();
+        }
+
+        @Override
+        public MultiValueMap<String, ResponseCookie> cookies() {
+            return response.cookies();
+        }
+
+        @Override
+        public Mono<Void> writeTo(ServerWebExchange exchange, Context context) {
+            return response.writeTo(exchange, context)
+                    .doFinally(signal -> permit.release(signal == SignalType.ON_COMPLETE));
+        }
+    }
+}
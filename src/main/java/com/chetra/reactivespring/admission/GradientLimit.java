@@ -0,0 +1,71 @@
+package com.chetra.reactivespring.admission;
+
+/**
+ * Concurrency limit driven by latency, in the style of TCP Vegas and Netflix's Gradient2.
+ * Completed requests are averaged into windows, each window's average is compared against a slowly
+ * moving long term average. While latency holds the limit grows by roughly its square root per window,
+ * once latency climbs past the tolerance the limit shrinks in proportion, at most halving per window.
+ * Windows where fewer than half the permits were in use leave the limit alone, there was no queueing to learn from
+ * */
+public class GradientLimit {
+    private static final double LONG_TERM_WINDOWS = 20;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final int windowSize;
+
+    private volatile double limit;
+    private double longRtt;
+    private long windowRttSum;
+    private int windowCount;
+    private int windowMaxInFlight;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing, int windowSize) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowSize = windowSize;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Record the latency of a completed request and the number of requests in flight when it started
+     * */
+    public synchronized void onSample(long rttNanos, int inFlight) {
+        windowRttSum += rttNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        if (++windowCount < windowSize) {
+            return;
+        }
+
+        double shortRtt = (double) windowRttSum / windowCount;
+        boolean appLimited = windowMaxInFlight < limit / 2;
+        windowRttSum = 0;
+        windowCount = 0;
+        windowMaxInFlight = 0;
+
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) / LONG_TERM_WINDOWS;
+            if (longRtt / shortRtt > 2) {
+                // latency dropped for good, catch up instead of waiting out the average
+                longRtt *= 0.95;
+            }
+        }
+        if (appLimited) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double proposed = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + proposed * smoothing));
+    }
+}
@@ -0,0 +1,52 @@
+package com.chetra.reactivespring.codec;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Deflated block of customers, each written as its id and modified UTF-8 name.
+ * Favors speed over ratio, a batch of similar names still shrinks several times
+ * */
+public final class CompressedCustomers {
+    private CompressedCustomers() {
+    }
+
+    public static byte[] compress(List<CustomerDto> customers) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + customers.size() * 8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            for (CustomerDto customer : customers) {
+                out.writeInt(customer.getId());
+                out.writeUTF(customer.getName());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<CustomerDto> decompress(byte[] compressed, int count) {
+        List<CustomerDto> customers = new ArrayList<>(count);
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+            for (int i = 0; i < count; i++) {
+                customers.add(new CustomerDto(in.readInt(), in.readUTF()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return customers;
+    }
+}
@@ -0,0 +1,81 @@
+package com.chetra.reactivespring.codec;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes customers without Jackson, straight into buffers from the factory, pooled ones under Netty.
+ * Nothing is cached, customers are fresh instances on every read and encoding one costs about as much
+ * as looking its bytes up would
+ * */
+public class CustomerJsonEncoder extends AbstractEncoder<CustomerDto> implements HttpMessageEncoder<CustomerDto> {
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] ARRAY_END = {']'};
+
+    public CustomerJsonEncoder() {
+        super(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON);
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return CustomerDto.class.isAssignableFrom(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public List<MediaType> getStreamingMediaTypes() {
+        return List.of(MediaType.APPLICATION_NDJSON);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends CustomerDto> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        if (inputStream instanceof Mono<? extends CustomerDto> mono) {
+            return mono.map(customer -> encodeValue(customer, bufferFactory, elementType, mimeType, hints)).flux();
+        }
+
+        if (MediaType.APPLICATION_NDJSON.isCompatibleWith(mimeType)) {
+            return Flux.from(inputStream).map(customer -> delimited(customer, bufferFactory, (byte) 0, (byte) '\n'));
+        }
+
+        return Flux.from(inputStream)
+                .index((i, customer) -> delimited(customer, bufferFactory, i == 0 ? (byte) '[' : (byte) ',', (byte) 0))
+                .switchIfEmpty(Mono.fromSupplier(() -> bufferFactory.wrap(ARRAY_START)))
+                .concatWith(Mono.fromSupplier(() -> bufferFactory.wrap(ARRAY_END)));
+    }
+
+    @Override
+    public DataBuffer encodeValue(CustomerDto customer, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        return delimited(customer, bufferFactory, (byte) 0, (byte) 0);
+    }
+
+    private DataBuffer delimited(CustomerDto customer, DataBufferFactory bufferFactory, byte prefix, byte suffix) {
+        DataBuffer buffer = bufferFactory.allocateBuffer(CustomerJson.sizeHint(customer) + 2);
+        try {
+            if (prefix != 0) {
+                buffer.write(prefix);
+            }
+            CustomerJson.write(customer, buffer);
+            if (suffix != 0) {
+                buffer.write(suffix);
+            }
+            return buffer;
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(buffer);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.chetra.reactivespring.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.springframework.http.MediaType;
+
+/**
+ * Streaming binary formats, every element is prefixed with its length as an unsigned varint
+ * the way protobuf delimits messages in a stream, so a reader can decode each element as soon as it arrived
+ * */
+public final class LengthDelimited {
+    public static final MediaType CBOR_STREAM = new MediaType("application", "x-cbor-stream");
+    public static final MediaType SMILE_STREAM = new MediaType("application", "x-smile-stream");
+
+    private LengthDelimited() {
+    }
+
+    public static LengthDelimitedEncoder cborEncoder() {
+        return new LengthDelimitedEncoder(new CBORMapper(), CBOR_STREAM);
+    }
+
+    public static LengthDelimitedDecoder cborDecoder() {
+        return new LengthDelimitedDecoder(new CBORMapper(), CBOR_STREAM);
+    }
+
+    public static LengthDelimitedEncoder smileEncoder() {
+        return new LengthDelimitedEncoder(smileMapper(), SMILE_STREAM);
+    }
+
+    public static LengthDelimitedDecoder smileDecoder() {
+        return new LengthDelimitedDecoder(smileMapper(), SMILE_STREAM);
+    }
+
+    /**
+     * The frame already delimits each element, a Smile header in front of every customer would only add bytes
+     * */
+    private static SmileMapper smileMapper() {
+        return new SmileMapper(SmileFactory.builder()
+                .disable(SmileGenerator.Feature.WRITE_HEADER)
+                .disable(SmileParser.Feature.REQUIRE_HEADER)
+                .build());
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Lenient about unknown properties like the JSON mapper Spring Boot configures
+     * */
+    static ObjectMapper mapper(ObjectMapper mapper) {
+        return mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+}
@@ -0,0 +1,125 @@
+package com.chetra.reactivespring.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits [varint length][element] frames out of the body as buffers arrive,
+ * elements are decoded one by one so a large stream never has to be held in memory
+ * */
+public class LengthDelimitedDecoder extends AbstractDecoder<Object> {
+    private static final int MAX_FRAME_SIZE = 256 * 1024;
+
+    private final ObjectMapper mapper;
+
+    LengthDelimitedDecoder(ObjectMapper mapper, MediaType mediaType) {
+        super(mediaType);
+        this.mapper = LengthDelimited.mapper(mapper);
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return mimeType != null && super.canDecode(elementType, mimeType)
+                && mapper.canDeserialize(mapper.constructType(elementType.getType()));
+    }
+
+    @Override
+    public Flux<Object> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                               MimeType mimeType, Map<String, Object> hints) {
+        JavaType type = mapper.constructType(elementType.getType());
+        return Flux.defer(() -> {
+            Framer framer = new Framer();
+            return Flux.from(inputStream)
+                    .concatMapIterable(buffer -> {
+                        try {
+                            return framer.frames(buffer);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .concatWith(Mono.fromRunnable(framer::finish))
+                    .map(frame -> read(type, frame));
+        });
+    }
+
+    @Override
+    public Mono<Object> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                                     MimeType mimeType, Map<String, Object> hints) {
+        return decode(inputStream, elementType, mimeType, hints).singleOrEmpty();
+    }
+
+    private Object read(JavaType type, byte[] frame) {
+        try {
+            return mapper.readValue(frame, type);
+        } catch (IOException e) {
+            throw new DecodingException("Could not decode frame of " + frame.length + " bytes", e);
+        }
+    }
+
+    /**
+     * Carries a partial length or element across buffer boundaries
+     * */
+    private static final class Framer {
+        private int length;
+        private int shift;
+        private boolean readingLength = true;
+        private byte[] frame;
+        private int filled;
+
+        List<byte[]> frames(DataBuffer buffer) {
+            List<byte[]> frames = new ArrayList<>();
+            while (buffer.readableByteCount() > 0) {
+                if (readingLength) {
+                    byte next = buffer.read();
+                    if (shift > 28) {
+                        throw new DecodingException("Malformed frame length");
+                    }
+                    length |= (next & 0x7F) << shift;
+                    shift += 7;
+                    if ((next & 0x80) == 0) {
+                        if (length < 0 || length > MAX_FRAME_SIZE) {
+                            throw new DataBufferLimitException("Frame of " + length + " bytes exceeds " + MAX_FRAME_SIZE);
+                        }
+                        readingLength = false;
+                        frame = new byte[length];
+                        filled = 0;
+                    }
+                } else {
+                    int count = Math.min(buffer.readableByteCount(), frame.length - filled);
+                    buffer.read(frame, filled, count);
+                    filled += count;
+                }
+
+                if (!readingLength && filled == frame.length) {
+                    frames.add(frame);
+                    length = 0;
+                    shift = 0;
+                    readingLength = true;
+                }
+            }
+            return frames;
+        }
+
+        void finish() {
+            if (!readingLength || shift > 0) {
+                throw new DecodingException("Stream ended inside a frame");
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.chetra.reactivespring.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes each element as [varint length][element encoded by the binary mapper], one buffer per element
+ * */
+public class LengthDelimitedEncoder extends AbstractEncoder<Object> implements HttpMessageEncoder<Object> {
+    private final ObjectMapper mapper;
+    private final MediaType mediaType;
+
+    LengthDelimitedEncoder(ObjectMapper mapper, MediaType mediaType) {
+        super(mediaType);
+        this.mapper = LengthDelimited.mapper(mapper);
+        this.mediaType = mediaType;
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return mimeType != null && super.canEncode(elementType, mimeType)
+                && mapper.canSerialize(elementType.toClass());
+    }
+
+    @Override
+    public List<MediaType> getStreamingMediaTypes() {
+        return List.of(mediaType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        ObjectWriter writer = mapper.writerFor(mapper.constructType(elementType.getType()));
+        return Flux.from(inputStream).map(value -> frame(writer, value, bufferFactory));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        return frame(mapper.writerFor(mapper.constructType(valueType.getType())), value, bufferFactory);
+    }
+
+    private static DataBuffer frame(ObjectWriter writer, Object value, DataBufferFactory bufferFactory) {
+        byte[] bytes;
+        try {
+            bytes = writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new EncodingException("Could not encode " + value, e);
+        }
+
+        DataBuffer buffer = bufferFactory.allocateBuffer(LengthDelimited.varintSize(bytes.length) + bytes.length);
+        int length = bytes.length;
+        while ((length & ~0x7F) != 0) {
+            buffer.write((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buffer.write((byte) length);
+        return buffer.write(bytes);
+    }
+}
@@ -0,0 +1,83 @@
+package com.chetra.reactivespring.config;
+
+import com.chetra.reactivespring.codec.LengthDelimited;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.CodecConfigurer;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Binary formats next to JSON: CBOR, Smile which Spring registers on its own,
+ * and length delimited CBOR and Smile streams for listings and bulk ingest
+ * */
+@Configuration
+public class BinaryCodecConfig implements WebFluxConfigurer {
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        register(configurer.customCodecs());
+    }
+
+    public static void register(CodecConfigurer.CustomCodecs codecs) {
+        CBORMapper cbor = new CBORMapper();
+        codecs.register(new ExplicitCborEncoder(cbor));
+        codecs.register(new ExplicitCborDecoder(cbor));
+        codecs.register(LengthDelimited.cborEncoder());
+        codecs.register(LengthDelimited.cborDecoder());
+        codecs.register(LengthDelimited.smileEncoder());
+        codecs.register(LengthDelimited.smileDecoder());
+    }
+
+    /**
+     * Custom codecs are consulted before JSON, so CBOR only applies when it was asked for by media type,
+     * the media type is passed explicitly since the mapper only constructor falls back to the JSON types
+     * */
+    private static class ExplicitCborEncoder extends Jackson2CborEncoder {
+        ExplicitCborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+            return mimeType != null && super.canEncode(elementType, mimeType);
+        }
+
+        /**
+         * Single values are written through encode as well, which the CBOR encoder refuses for any publisher
+         * */
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            if (inputStream instanceof Mono) {
+                return Mono.from(inputStream)
+                        .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                        .flux();
+            }
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+    }
+
+    private static class ExplicitCborDecoder extends Jackson2CborDecoder {
+        ExplicitCborDecoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+            return mimeType != null && super.canDecode(elementType, mimeType);
+        }
+    }
+}
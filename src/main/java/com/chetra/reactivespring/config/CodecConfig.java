@@ -0,0 +1,19 @@
+package com.chetra.reactivespring.config;
+
+import com.chetra.reactivespring.codec.CustomerJsonEncoder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * Registers the direct customer encoder, typed codecs are consulted before the Jackson fallback
+ * */
+@Configuration
+@ConditionalOnProperty(prefix = "customer.json", name = "encoder", havingValue = "direct", matchIfMissing = true)
+public class CodecConfig implements WebFluxConfigurer {
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().register(new CustomerJsonEncoder());
+    }
+}
@@ -0,0 +1,251 @@
+package com.chetra.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tuning knobs for the customer store and service, bound from customer.* properties
+ * */
+@Data
+@ConfigurationProperties(prefix = "customer")
+public class CustomerProperties {
+    private Store store = new Store();
+    private Bulk bulk = new Bulk();
+    private Cache cache = new Cache();
+    private Json json = new Json();
+    private Lookup lookup = new Lookup();
+    private Changes changes = new Changes();
+    private Execution execution = new Execution();
+    private Admission admission = new Admission();
+    private Scan scan = new Scan();
+    private Shard shard = new Shard();
+    private Replication replication = new Replication();
+    private Stats stats = new Stats();
+    private Write write = new Write();
+
+    @Data
+    public static class Store {
+        /** Number of sample customers written into an empty store on startup */
+        private int sampleCustomers = 50;
+        /** Layout of the customer records, heap keeps objects, off-heap encodes them into direct buffer slabs */
+        private Mode mode = Mode.HEAP;
+        /** Size of each direct buffer slab in off-heap mode */
+        private DataSize slabSize = DataSize.ofMegabytes(16);
+        /** Version stamps kept for ETags, rounded up to a power of two, ids sharing a slot share its stamp */
+        private int versionSlots = 65_536;
+        private Persistence persistence = new Persistence();
+        private Snapshot snapshot = new Snapshot();
+
+        public enum Mode {
+            HEAP,
+            OFF_HEAP
+        }
+    }
+
+    @Data
+    public static class Snapshot {
+        /** Load a snapshot on startup and write new ones periodically */
+        private boolean enabled = false;
+        /** Snapshot file, replaced atomically on every write */
+        private Path path = Path.of("data/customers.snapshot");
+        /** How often a snapshot is written */
+        private Duration interval = Duration.ofMinutes(5);
+        /** Write a final snapshot when the application shuts down */
+        private boolean writeOnShutdown = true;
+    }
+
+    @Data
+    public static class Persistence {
+        /** Keep an append-only log of every write and replay it on startup */
+        private boolean enabled = false;
+        /** Directory holding the log segments */
+        private Path directory = Path.of("data");
+        /** Size after which the active segment is closed and a new one started */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        /** How often closed segments are rewritten to drop overwritten records */
+        private Duration compactionInterval = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Bulk {
+        /** Maximum number of customers committed to the store in one batch */
+        private int batchSize = 1000;
+        /** Maximum time a partial batch waits for more customers before it is committed */
+        private Duration batchWindow = Duration.ofMillis(50);
+    }
+
+    @Data
+    public static class Cache {
+        /** Put the read-through cache in front of the customer service */
+        private boolean enabled = true;
+        /** Maximum number of customers kept in the read-through cache */
+        private long maximumSize = 10_000;
+        /** Time after which a cached customer is reloaded from the store */
+        private Duration ttl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Json {
+        /** Encoder for customer responses, direct skips Jackson for CustomerDto */
+        private String encoder = "direct";
+    }
+
+    @Data
+    public static class Lookup {
+        /** Coalesce concurrent lookups by id into one multi-get against the store */
+        private boolean coalesce = false;
+        /** How long the first lookup of a batch waits for others to join */
+        private Duration window = Duration.ofMillis(1);
+        /** Number of lookups that dispatches a batch without waiting for the window */
+        private int maxBatchSize = 256;
+    }
+
+    @Data
+    public static class Changes {
+        /** Number of recent changes kept to replay to subscribers resuming from a sequence number */
+        private int historySize = 10_000;
+        /** Changes buffered per subscriber before the overflow policy applies */
+        private int bufferSize = 256;
+        /** What happens to a subscriber whose buffer is full */
+        private Overflow overflow = Overflow.DROP_OLDEST;
+
+        public enum Overflow {
+            /** Discard the oldest buffered change */
+            DROP_OLDEST,
+            /** Keep only the latest change */
+            LATEST,
+            /** End the subscriber's stream */
+            DISCONNECT
+        }
+    }
+
+    @Data
+    public static class Execution {
+        /** Where store and service operations run */
+        private Strategy strategy = Strategy.INLINE;
+        /** Threads of the parallel strategy's pool */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        public enum Strategy {
+            /** On the subscribing thread, usually the event loop, for stores that never block */
+            INLINE,
+            /** On a dedicated pool bounded by parallelism, for CPU heavy work */
+            PARALLEL,
+            /** On Reactor's bounded elastic pool, for blocking backends */
+            BOUNDED_ELASTIC,
+            /** One virtual thread per task, for blocking backends on JDK 21+, bounded elastic on older JDKs */
+            VIRTUAL_THREADS
+        }
+    }
+
+    @Data
+    public static class Admission {
+        /** Shed load on the customer routes once the adaptive concurrency limit is reached */
+        private boolean enabled = true;
+        /** Concurrency limit before any latency was observed */
+        private int initialLimit = 50;
+        private int minLimit = 8;
+        private int maxLimit = 1000;
+        /** How much slower than the long term latency requests may get before the limit shrinks */
+        private double tolerance = 1.5;
+        /** Weight of each window's proposed limit, lower reacts slower but more steadily */
+        private double smoothing = 0.2;
+        /** Completed requests averaged into one latency sample */
+        private int windowSize = 25;
+        /** Share of the limit low priority requests may use, normal priority gets the middle */
+        private double lowPriorityShare = 0.5;
+        /** Retry-After sent with rejected requests */
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Scan {
+        /** Rails a parallel listing scan is split across, each on a core of Reactor's parallel scheduler */
+        private int rails = Runtime.getRuntime().availableProcessors();
+        /** Id ranges per rail, more even out rails whose ranges hold fewer customers */
+        private int chunksPerRail = 4;
+    }
+
+    @Data
+    public static class Shard {
+        /** Partition customers across instances, each owning the ids a consistent hash ring assigns to it */
+        private boolean enabled = false;
+        /** Base URL the other members reach this instance at, one of members */
+        private String self = "http://localhost:8080";
+        /** Base URLs of every instance of the ring, this one included, in any order */
+        private List<String> members = new ArrayList<>();
+        /** Points each member places on the ring, more spread ids more evenly */
+        private int virtualNodes = 128;
+        /** Time a forwarded request may wait for a connection or for the first bytes of its response */
+        private Duration timeout = Duration.ofSeconds(2);
+        /** Pooled connections to each member */
+        private int maxConnections = 64;
+    }
+
+    @Data
+    public static class Replication {
+        /** Whether this instance takes writes and ships them to followers, follows a leader, or neither */
+        private Role role = Role.NONE;
+        /** Base URL of the leader a follower streams the log from and redirects writes to */
+        private String leader = "http://localhost:8080";
+        /** Most writes shipped in one compressed batch */
+        private int batchSize = 500;
+        /** Longest a write waits for others to share its batch */
+        private Duration batchWindow = Duration.ofMillis(10);
+        /** Recent writes the leader keeps so reconnecting followers resume without a snapshot */
+        private int historySize = 100_000;
+        /** Writes queued for a follower before it is disconnected as too slow */
+        private int bufferSize = 10_000;
+        /** How often the leader reports its position to an idle follower */
+        private Duration heartbeat = Duration.ofSeconds(1);
+        /** Wait before a follower reconnects after losing the leader */
+        private Duration reconnectDelay = Duration.ofSeconds(1);
+        /** Longest a read carrying a position token waits for the follower to reach it */
+        private Duration readYourWritesTimeout = Duration.ofSeconds(2);
+
+        public enum Role {
+            NONE,
+            LEADER,
+            FOLLOWER
+        }
+    }
+
+    @Data
+    public static class Stats {
+        /** Leading characters of the name that customers are counted by, case insensitive */
+        private int prefixLength = 1;
+        /** Longest name length counted on its own, longer names share its bucket */
+        private int maxNameLength = 32;
+    }
+
+    @Data
+    public static class Write {
+        /** When POST /customer answers if the request does not pick with ?ack= */
+        private Ack ack = Ack.FLUSHED;
+        /** Writes accepted with ack=enqueued that wait for the background writer, further writes wait for room */
+        private int queueSize = 10_000;
+        /** Writes that may wait for room in a full queue, further writes are rejected with 503 and Retry-After */
+        private int maxWaiting = 1_000;
+        /** Retry-After sent with writes rejected because too many are waiting */
+        private Duration retryAfter = Duration.ofSeconds(1);
+        /** Most queued writes the background writer applies in one batch, capped by customer.bulk.batch-size */
+        private int batchSize = 500;
+        /** Longest shutdown waits for queued writes to be applied */
+        private Duration drainTimeout = Duration.ofSeconds(10);
+
+        public enum Ack {
+            /** Once queued, the background writer applies it later */
+            ENQUEUED,
+            /** Once visible in the store, the journal makes it durable later */
+            APPLIED,
+            /** Once the journal made it durable */
+            FLUSHED
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.chetra.reactivespring.config;
+
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerJournal;
+import com.chetra.reactivespring.dao.CustomerLog;
+import com.chetra.reactivespring.dao.CustomerSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+@Slf4j
+@Configuration
+public class PersistenceConfig {
+    /**
+     * The log is closed with the context, which flushes pending writes
+     * */
+    @Bean
+    public CustomerJournal customerJournal(CustomerProperties properties) {
+        CustomerProperties.Persistence persistence = properties.getStore().getPersistence();
+        if (!persistence.isEnabled()) {
+            return CustomerJournal.NONE;
+        }
+        return new CustomerLog(persistence.getDirectory(), persistence.getSegmentSize().toBytes());
+    }
+
+    @Bean
+    public CustomerSnapshot customerSnapshot(CustomerProperties properties) {
+        CustomerProperties.Snapshot snapshot = properties.getStore().getSnapshot();
+        return snapshot.isEnabled() ? new CustomerSnapshot(snapshot.getPath()) : CustomerSnapshot.NONE;
+    }
+
+    /**
+     * Periodically drop overwritten records from the log
+     * */
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(prefix = "customer.store.persistence", name = "enabled", havingValue = "true")
+    public Disposable customerLogCompaction(CustomerDao customerDao, CustomerProperties properties) {
+        return every(properties.getStore().getPersistence().getCompactionInterval(),
+                "Customer log compaction", customerDao.compact());
+    }
+
+    /**
+     * Periodic snapshots, plus a final one on shutdown so the next start only loads the snapshot
+     * */
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(prefix = "customer.store.snapshot", name = "enabled", havingValue = "true")
+    public Disposable customerSnapshots(CustomerDao customerDao, CustomerProperties properties) {
+        CustomerProperties.Snapshot snapshot = properties.getStore().getSnapshot();
+        Disposable periodic = every(snapshot.getInterval(), "Customer snapshot", customerDao.snapshot());
+        return () -> {
+            periodic.dispose();
+            if (snapshot.isWriteOnShutdown()) {
+                customerDao.snapshot().block();
+            }
+        };
+    }
+
+    private static Disposable every(Duration interval, String task, Mono<Void> run) {
+        return Flux.interval(interval, Schedulers.boundedElastic())
+                .concatMap(tick -> run
+                        .doOnError(e -> log.error("{} failed", task, e))
+                        .onErrorComplete())
+                .subscribe();
+    }
+}
@@ -0,0 +1,19 @@
+package com.chetra.reactivespring.config;
+
+import com.chetra.reactivespring.replication.CustomerFollower;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.Disposable;
+
+@Configuration
+public class ReplicationConfig {
+    /**
+     * Followers stream the log of the leader for as long as they run
+     * */
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(prefix = "customer.replication", name = "role", havingValue = "follower")
+    public Disposable customerReplication(CustomerFollower customerFollower) {
+        return customerFollower.follow();
+    }
+}
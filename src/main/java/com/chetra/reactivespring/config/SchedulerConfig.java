@@ -0,0 +1,77 @@
+package com.chetra.reactivespring.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.observability.micrometer.Micrometer;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Slf4j
+@Configuration
+public class SchedulerConfig {
+    /**
+     * Scheduler store operations run on, picked by customer.execution.strategy
+     * and wrapped so task counts, queueing and execution times are published tagged with the strategy
+     * */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler customerScheduler(CustomerProperties properties, MeterRegistry registry) {
+        CustomerProperties.Execution execution = properties.getExecution();
+        CustomerProperties.Execution.Strategy strategy = effectiveStrategy(execution.getStrategy());
+        Tags tags = Tags.of("strategy", strategy.name().toLowerCase());
+        Gauge.builder("customer.execution.strategy", () -> 1)
+                .description("Execution strategy of store operations, always 1")
+                .tags(tags)
+                .register(registry);
+        return Micrometer.timedScheduler(scheduler(strategy, execution.getParallelism()),
+                registry, "customer.scheduler", tags);
+    }
+
+    public static Scheduler scheduler(CustomerProperties.Execution execution) {
+        return scheduler(effectiveStrategy(execution.getStrategy()), execution.getParallelism());
+    }
+
+    private static Scheduler scheduler(CustomerProperties.Execution.Strategy strategy, int parallelism) {
+        return switch (strategy) {
+            case INLINE -> Schedulers.immediate();
+            case PARALLEL -> Schedulers.newParallel("customer", parallelism);
+            case BOUNDED_ELASTIC -> Schedulers.boundedElastic();
+            case VIRTUAL_THREADS -> Schedulers.fromExecutorService(virtualThreadExecutor(), "customer-virtual");
+        };
+    }
+
+    /**
+     * Virtual threads fall back to bounded elastic on JDKs without them
+     * */
+    private static CustomerProperties.Execution.Strategy effectiveStrategy(CustomerProperties.Execution.Strategy strategy) {
+        if (strategy == CustomerProperties.Execution.Strategy.VIRTUAL_THREADS && !virtualThreadsAvailable()) {
+            log.warn("Virtual threads need JDK 21+, running on {} with bounded elastic instead",
+                    System.getProperty("java.version"));
+            return CustomerProperties.Execution.Strategy.BOUNDED_ELASTIC;
+        }
+        return strategy;
+    }
+
+    private static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+}
@@ -1,33 +1,505 @@
 package com.chetra.reactivespring.dao;
 
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.BulkInsertDto;
 import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerLogBatchDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
+import com.chetra.reactivespring.metrics.CustomerMetrics;
+import com.chetra.reactivespring.shard.ShardRing;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.BaseUnits;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.ParallelFlux;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * In-memory customer store.
+ * Customers and their indexes are kept by a {@link CustomerStore}, on the heap or off-heap depending on customer.store.mode.
+ * Writes are handed to the {@link CustomerJournal} in the order they were applied
+ * and only complete once the journal has made them durable, those it fails to write are undone before they fail.
+ * On startup the latest {@link CustomerSnapshot} is loaded and only the journal written after it is replayed.
+ * Every read and write runs on the scheduler picked by customer.execution.strategy.
+ * Writes made after startup stamp the customer and the store with a new {@link CustomerVersions version}.
+ * Every write, replayed ones included, adjusts the {@link CustomerStats aggregates} by what it changed.
+ * When leading replication, applied writes are also numbered in a {@link CustomerReplicationLog} streamed to followers.
+ * When sharded, sample customers and generated ids are limited to those the {@link ShardRing} assigns to this instance.
+ * */
 @Repository
 public class CustomerDao {
+    /**
+     * Shortest substring searched for without a prefix
+     * */
+    public static final int MIN_CONTAINS = CustomerSearchIndex.GRAM;
+
+    private static final String METRICS_LAYER = "customer.dao";
+    private static final Comparator<CustomerDto> BY_ID = Comparator.comparing(CustomerDto::getId);
+
+    private final CustomerStore customers;
+    private final CustomerSearchIndex search = new CustomerSearchIndex();
+    private final CustomerVersions versions;
+    private final CustomerStats stats;
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final CustomerJournal journal;
+    private final CustomerSnapshot snapshot;
+    private final Scheduler scheduler;
+    private final CustomerProperties.Scan scan;
+    private final ShardRing ring;
+    private final CustomerReplicationLog log;
+    private final List<IntConsumer> writeListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<CustomerDto>> changeListeners = new CopyOnWriteArrayList<>();
+    private final CustomerMetrics.Operation listMetrics;
+    private final CustomerMetrics.Operation pageMetrics;
+    private final CustomerMetrics.Operation getByIdMetrics;
+    private final CustomerMetrics.Operation getByIdsMetrics;
+    private final CustomerMetrics.Operation getByNameMetrics;
+    private final CustomerMetrics.Operation searchMetrics;
+    private final CustomerMetrics.Operation scanMetrics;
+    private final CustomerMetrics.Operation saveMetrics;
+    private final CustomerMetrics.Operation saveBatchMetrics;
+    private final CustomerMetrics.Operation snapshotMetrics;
+
+    public CustomerDao(CustomerProperties properties, CustomerJournal customerJournal, CustomerSnapshot customerSnapshot,
+                       CustomerMetrics metrics, Scheduler customerScheduler, ShardRing shardRing) {
+        this.customers = CustomerStore.create(properties.getStore());
+        this.versions = new CustomerVersions(properties.getStore().getVersionSlots());
+        this.journal = customerJournal;
+        this.snapshot = customerSnapshot;
+        this.scheduler = customerScheduler;
+        this.scan = properties.getScan();
+        this.stats = new CustomerStats(properties.getStats());
+        this.ring = shardRing;
+        CustomerProperties.Replication.Role role = properties.getReplication().getRole();
+        if (role != CustomerProperties.Replication.Role.NONE && ring.isEnabled()) {
+            throw new IllegalStateException("customer.replication and customer.shard cannot be enabled together");
+        }
+        this.log = role == CustomerProperties.Replication.Role.LEADER
+                ? new CustomerReplicationLog(properties.getReplication())
+                : null;
+        this.listMetrics = metrics.operation(METRICS_LAYER, "get50Customers");
+        this.pageMetrics = metrics.operation(METRICS_LAYER, "getCustomers");
+        this.getByIdMetrics = metrics.operation(METRICS_LAYER, "getCustomerById");
+        this.getByIdsMetrics = metrics.operation(METRICS_LAYER, "getCustomersByIds");
+        this.getByNameMetrics = metrics.operation(METRICS_LAYER, "getCustomersByName");
+        this.searchMetrics = metrics.operation(METRICS_LAYER, "searchCustomers");
+        this.scanMetrics = metrics.operation(METRICS_LAYER, "scanCustomers");
+        this.saveMetrics = metrics.operation(METRICS_LAYER, "saveCustomer");
+        this.saveBatchMetrics = metrics.operation(METRICS_LAYER, "saveCustomers");
+        this.snapshotMetrics = metrics.operation(METRICS_LAYER, "snapshot");
+        registerFootprint(metrics.getRegistry(), properties.getStore().getMode());
+        if (log != null) {
+            registerReplication(metrics.getRegistry());
+        }
+
+        long replayFrom = snapshot.load(customer -> put(customer, false));
+        journal.replay(replayFrom, customer -> put(customer, false));
+        // followers get the leader's customers instead
+        if (customers.size() == 0 && role != CustomerProperties.Replication.Role.FOLLOWER) {
+            Mono<Void> durable = Mono.empty();
+            for (int i = 1; i <= properties.getStore().getSampleCustomers(); i++) {
+                if (ring.isLocal(i)) {
+                    durable = store(new CustomerDto(i, "Customer" + i)).durable;
+                }
+            }
+            durable.block();
+        }
+    }
+
     public Flux<CustomerDto> get50Customers() {
-        return Flux
-                .range(1, 50)
-                .flatMap(i -> Mono
-                        .just(i)
-                        .map(j ->
-                                new CustomerDto(j, "Customer" + j)
-                        )
-                ).subscribeOn(Schedulers.parallel());
+        return listMetrics.timed(Flux
+                .fromIterable(customers.list(null))
+                .subscribeOn(scheduler));
+    }
+
+    /**
+     * Page through customers in id order starting after the given id.
+     * The index is walked lazily so only the requested rows are ever read.
+     * */
+    public Flux<CustomerDto> getCustomers(int after, int limit) {
+        return pageMetrics.timed(Flux
+                .fromIterable(customers.list(after))
+                .take(limit, true)
+                .subscribeOn(scheduler));
     }
 
     public Mono<CustomerDto> getCustomerById(Integer id) {
-        if (id >=1 && id <=50) {
-           return Mono.just(new CustomerDto(id, "Customer" + id));
+        if (id == null) {
+            return Mono.empty();
+        }
+
+        return getByIdMetrics.timed(Mono
+                .fromSupplier(() -> customers.get(id))
+                .subscribeOn(scheduler));
+    }
+
+    /**
+     * Look up many customers in one call, in the order of the given ids.
+     * Unknown ids are skipped
+     * */
+    public Flux<CustomerDto> getCustomersByIds(Collection<Integer> ids) {
+        return getByIdsMetrics.timed(Flux
+                .fromIterable(ids)
+                .mapNotNull(id -> id == null ? null : customers.get(id))
+                .subscribeOn(scheduler));
+    }
+
+    public Flux<CustomerDto> getCustomersByName(String name) {
+        return getByNameMetrics.timed(Flux
+                .defer(() -> Flux.fromIterable(customers.getByName(name)))
+                .subscribeOn(scheduler));
+    }
+
+    /**
+     * Case insensitive search by name prefix and/or substring, stopping as soon as limit customers matched.
+     * Prefixes walk the sorted name index, substrings the ids of the rarest trigram.
+     * Substrings shorter than a trigram have no index to walk and are only accepted along with a prefix
+     * */
+    public Flux<CustomerDto> searchCustomers(String prefix, String contains, int limit) {
+        String normalizedPrefix = prefix == null ? null : CustomerSearchIndex.normalize(prefix);
+        String normalizedContains = contains == null ? null : CustomerSearchIndex.normalize(contains);
+        if (normalizedPrefix == null && normalizedContains.length() < MIN_CONTAINS) {
+            return Flux.error(new IllegalArgumentException(
+                    "contains needs at least " + MIN_CONTAINS + " characters without a prefix"));
+        }
+
+        Flux<CustomerDto> candidates = Flux.defer(() -> normalizedPrefix != null
+                ? Flux.fromIterable(search.prefix(normalizedPrefix)).mapNotNull(customers::get)
+                : Flux.fromIterable(search.contains(normalizedContains)).mapNotNull(customers::get));
+
+        return searchMetrics.timed(candidates
+                .filter(customer -> CustomerSearchIndex.matches(customer.getName(), normalizedPrefix, normalizedContains))
+                .take(limit, true)
+                .subscribeOn(scheduler));
+    }
+
+    /**
+     * Customers matching the query in id order, stopping after limit of them.
+     * Predicates and projection are evaluated by the store so rejected rows are never materialized.
+     * In parallel the id range up to the highest id is cut into chunks scanned on rails of the parallel scheduler,
+     * merged back into id order when ordered or emitted as rails produce them otherwise
+     * */
+    public Flux<CustomerDto> scanCustomers(CustomerQuery query, int limit, boolean parallel, boolean ordered) {
+        Flux<CustomerDto> scanned = parallel
+                ? Flux.defer(() -> scanInParallel(query, ordered))
+                : Flux.defer(() -> Flux.fromIterable(customers.scan(query))).subscribeOn(scheduler);
+        return scanMetrics.timed(scanned.take(limit, true));
+    }
+
+    public Mono<CustomerDto> saveCustomer(CustomerDto customerDto) {
+        return saveMetrics.timed(Mono
+                .defer(() -> store(customerDto).completion())
+                .subscribeOn(scheduler));
+    }
+
+    /**
+     * Completes once the journal made the write durable, or as soon as it is visible when durable is false,
+     * the journal then flushes it in the background
+     * */
+    public Mono<CustomerDto> postCustomer(Mono<CustomerDto> customerDto, boolean durable) {
+        return saveMetrics.timed(customerDto
+                .publishOn(scheduler)
+                .flatMap(customer -> durable ? store(customer).completion() : Mono.just(store(customer).customer)));
+    }
+
+    /**
+     * Commit a batch of customers in one go.
+     * Invalid customers are counted as rejected without failing the rest of the batch
+     * */
+    public Mono<BulkInsertDto> saveCustomers(List<CustomerDto> customerDtos) {
+        return saveBatchMetrics.timed(Mono.defer(() -> {
+            long accepted = 0;
+            Mono<Void> durable = Mono.empty();
+            for (CustomerDto customerDto : customerDtos) {
+                if (customerDto.getName() != null) {
+                    // the journal flushes in order, the last write being durable covers the batch
+                    durable = store(customerDto).durable;
+                    accepted++;
+                }
+            }
+            return durable.thenReturn(new BulkInsertDto(accepted, customerDtos.size() - accepted));
+        }).subscribeOn(scheduler));
+    }
+
+    /**
+     * Rewrite the journal keeping only the current version of every customer.
+     * With snapshots enabled a snapshot is taken instead, rewriting customers into segments after its checkpoint
+     * would have the next start replay all of them on top of the snapshot
+     * */
+    public Mono<Void> compact() {
+        if (snapshot.isEnabled()) {
+            return snapshot();
         }
+        return journal.compact(customers.values());
+    }
+
+    /**
+     * Write a snapshot in the background while readers and writers carry on,
+     * then drop the journal segments it covers
+     * */
+    public Mono<Void> snapshot() {
+        if (!snapshot.isEnabled()) {
+            return Mono.empty();
+        }
+
+        return snapshotMetrics.timed(journal.checkpoint()
+                .publishOn(Schedulers.boundedElastic())
+                .flatMap(segment -> Mono.fromCallable(() -> {
+                    snapshot.write(customers.values(), segment);
+                    return segment;
+                }))
+                .flatMap(journal::truncate));
+    }
+
+    /**
+     * Version of a customer as microseconds since the epoch at its last write,
+     * unknown customers report the version of the startup load
+     * */
+    public long getVersion(int id) {
+        return versions.version(id);
+    }
+
+    /**
+     * Called with the id of every write once it is visible and before its version moves,
+     * whoever reads the new version can rely on the listener having run
+     * */
+    public void onWrite(IntConsumer listener) {
+        writeListeners.add(listener);
+    }
+
+    /**
+     * Called with every write made after startup while the store still holds its id,
+     * so writes to an id are reported in the order they were applied. An undone write reports the customer put back.
+     * The listener holds up the next write to the id and should only hand the customer off
+     * */
+    public void onChange(Consumer<CustomerDto> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Version of the last write to any customer
+     * */
+    public long getGeneration() {
+        return versions.generation();
+    }
 
-        return Mono.empty();
+    /**
+     * Aggregates of the stored customers, read without scanning them
+     * */
+    public CustomerStatsDto getStats() {
+        return stats.snapshot();
     }
 
-    public Mono<CustomerDto> postCustomer(Mono<CustomerDto> customerDto) {
-        return customerDto;
+    /**
+     * Compressed batches of the replication log after the given position of the given epoch,
+     * preceded by a snapshot of the store when they cannot be replayed
+     * */
+    public Flux<CustomerLogBatchDto> replicate(long since, long epoch) {
+        if (log == null) {
+            return Flux.error(new IllegalStateException("Not a replication leader"));
+        }
+        return log.stream(since, epoch, customers::values);
+    }
+
+    /**
+     * Position of the last write in the replication log, -1 unless this instance leads
+     * */
+    public long getReplicationPosition() {
+        return log == null ? -1 : log.position();
+    }
+
+    /**
+     * Start of this run of the leader, positions of different epochs cannot be compared
+     * */
+    public long getReplicationEpoch() {
+        return log == null ? -1 : log.epoch();
+    }
+
+    public int count() {
+        return customers.size();
+    }
+
+    /**
+     * Footprint of the store, its heap part including the search indexes kept next to it
+     * */
+    public CustomerStore.Footprint footprint() {
+        CustomerStore.Footprint store = customers.footprint();
+        return new CustomerStore.Footprint(store.records(), store.heapBytes() + search.heapBytes(),
+                store.offHeapBytes(), store.offHeapLiveBytes());
+    }
+
+    private Flux<CustomerDto> scanInParallel(CustomerQuery query, boolean ordered) {
+        int to = Math.min(query.maxId(), sequence.get());
+        Iterator<CustomerDto> first = customers.scan(new CustomerQuery(query.minId(), to, null, false)).iterator();
+        if (!first.hasNext()) {
+            return Flux.empty();
+        }
+
+        List<CustomerQuery> chunks = query.split(first.next().getId(), to, scan.getRails() * scan.getChunksPerRail());
+        // rails take chunks in id order, so each rail is sorted and ordered only has to merge them
+        ParallelFlux<CustomerDto> rails = Flux.fromIterable(chunks)
+                .parallel(scan.getRails(), 1)
+                .runOn(Schedulers.parallel(), 1)
+                .concatMap(chunk -> Flux.fromIterable(customers.scan(chunk)));
+        return ordered ? rails.ordered(BY_ID) : rails.sequential();
+    }
+
+    private void registerFootprint(MeterRegistry registry, CustomerProperties.Store.Mode mode) {
+        Tags tags = Tags.of("mode", mode.name().toLowerCase());
+        Gauge.builder("customer.store.records", this, dao -> dao.footprint().records())
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("customer.store.memory", this, dao -> dao.footprint().heapBytes())
+                .tags(tags.and("area", "heap"))
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        Gauge.builder("customer.store.memory", this, dao -> dao.footprint().offHeapBytes())
+                .tags(tags.and("area", "off-heap"))
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        Gauge.builder("customer.store.memory.live", this, dao -> dao.footprint().offHeapLiveBytes())
+                .tags(tags.and("area", "off-heap"))
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    private void registerReplication(MeterRegistry registry) {
+        Gauge.builder("customer.replication.position", log, CustomerReplicationLog::position)
+                .description("Position of the last write in the replication log")
+                .tags("role", "leader")
+                .register(registry);
+        Gauge.builder("customer.replication.followers", log, CustomerReplicationLog::followers)
+                .register(registry);
+    }
+
+    private Write store(CustomerDto customerDto) {
+        if (customerDto.getName() == null) {
+            throw new IllegalArgumentException("Customer name is required");
+        }
+
+        if (customerDto.getId() == null) {
+            return insert(customerDto.getName());
+        }
+
+        CustomerDto customer = new CustomerDto(customerDto.getId(), customerDto.getName());
+        return new Write(customer, put(customer, true));
+    }
+
+    /**
+     * Apply a write to memory and, while still holding the entry, enqueue it in the journal
+     * so the journal sees writes to the same id in the order they were applied
+     * */
+    private Mono<Void> put(CustomerDto customer, boolean journaled) {
+        sequence.accumulateAndGet(customer.getId(), Math::max);
+        Write write = new Write(customer, Mono.empty());
+        customers.put(customer, previous -> {
+            stats.update(previous, customer);
+            if (previous == null) {
+                search.index(customer);
+            } else if (!previous.getName().equals(customer.getName())) {
+                search.unindex(previous);
+                search.index(customer);
+            }
+            if (journaled) {
+                write.durable = journal.append(customer, () -> undo(customer, previous));
+                changed(customer);
+            }
+        });
+        if (journaled) {
+            written(customer.getId());
+        }
+        return write.durable;
+    }
+
+    /**
+     * Insert under a freshly generated id owned by this shard,
+     * retrying when a client supplied id already took the candidate
+     * */
+    private Write insert(String name) {
+        while (true) {
+            int id = sequence.incrementAndGet();
+            if (!ring.isLocal(id)) {
+                continue;
+            }
+            Write write = new Write(new CustomerDto(id, name), Mono.empty());
+            if (customers.putIfAbsent(write.customer, previous -> {
+                stats.update(null, write.customer);
+                search.index(write.customer);
+                write.durable = journal.append(write.customer, () -> undo(write.customer, null));
+                changed(write.customer);
+            })) {
+                written(write.customer.getId());
+                return write;
+            }
+        }
+    }
+
+    /**
+     * Take back a write the journal failed to make durable, unless a later write to the id already replaced it.
+     * The customer it replaced is put back and reported like a write, an inserted one is removed.
+     * The journal already dropped the write, so nothing is journaled
+     * */
+    private void undo(CustomerDto customer, CustomerDto previous) {
+        boolean undone = customers.replace(customer, previous, replaced -> {
+            stats.update(customer, previous);
+            if (previous == null) {
+                search.unindex(customer);
+            } else if (!previous.getName().equals(customer.getName())) {
+                search.unindex(customer);
+                search.index(previous);
+            }
+            if (previous != null) {
+                changed(previous);
+            }
+        });
+        if (undone) {
+            written(customer.getId());
+        }
+    }
+
+    /**
+     * Number a write in the replication log and report it, both while its id is held
+     * */
+    private void changed(CustomerDto customer) {
+        if (log != null) {
+            log.append(customer);
+        }
+        for (Consumer<CustomerDto> listener : changeListeners) {
+            listener.accept(customer);
+        }
+    }
+
+    private void written(int id) {
+        for (IntConsumer listener : writeListeners) {
+            listener.accept(id);
+        }
+        versions.touch(id);
+    }
+
+    private static final class Write {
+        private final CustomerDto customer;
+        private Mono<Void> durable;
+
+        private Write(CustomerDto customer, Mono<Void> durable) {
+            this.customer = customer;
+            this.durable = durable;
+        }
+
+        private Mono<CustomerDto> completion() {
+            return durable.thenReturn(customer);
+        }
     }
 }
@@ -0,0 +1,76 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Consumer;
+
+/**
+ * Durable record of every customer write behind {@link CustomerDao}
+ * */
+public interface CustomerJournal {
+    /**
+     * Journal for a purely in-memory store
+     * */
+    CustomerJournal NONE = new CustomerJournal() {
+        @Override
+        public void replay(long fromSegment, Consumer<CustomerDto> customers) {
+        }
+
+        @Override
+        public Mono<Void> append(CustomerDto customer, Runnable undo) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> compact(Iterable<CustomerDto> liveCustomers) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Long> checkpoint() {
+            return Mono.just(0L);
+        }
+
+        @Override
+        public Mono<Void> truncate(long beforeSegment) {
+            return Mono.empty();
+        }
+    };
+
+    /**
+     * Feed every persisted customer to the consumer in write order, later records win
+     * */
+    default void replay(Consumer<CustomerDto> customers) {
+        replay(0, customers);
+    }
+
+    /**
+     * Replay only the segments numbered fromSegment and up
+     * */
+    void replay(long fromSegment, Consumer<CustomerDto> customers);
+
+    /**
+     * Enqueue the write right away, the returned Mono completes once it is durable.
+     * Calls must be made in the order the writes were applied to memory.
+     * When the write cannot be made durable undo runs before the Mono fails,
+     * undos of writes failing together run newest first so each finds the state its write left behind
+     * */
+    Mono<Void> append(CustomerDto customer, Runnable undo);
+
+    /**
+     * Replace everything written so far with the given live customers
+     * */
+    Mono<Void> compact(Iterable<CustomerDto> liveCustomers);
+
+    /**
+     * Start a new segment and return its number,
+     * every write enqueued before the call lives in an older segment
+     * */
+    Mono<Long> checkpoint();
+
+    /**
+     * Delete the segments numbered below beforeSegment once a snapshot covers them
+     * */
+    Mono<Void> truncate(long beforeSegment);
+}
@@ -0,0 +1,386 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only customer log split into numbered segment files.
+ * Each record is [int length][int crc32c][int id][utf-8 name], length covering id and name.
+ * All file I/O happens on a dedicated writer thread, appends queued while a flush is running
+ * are written and forced together (group commit). Recovery maps segments read-only and stops
+ * at the first torn or corrupt record
+ * */
+@Slf4j
+public class CustomerLog implements CustomerJournal, AutoCloseable {
+    private static final String SEGMENT_PREFIX = "customers-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_BATCH = 4096;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Scheduler writer = Schedulers.newSingle("customer-log");
+    private final RecordBuffer records = new RecordBuffer();
+    private FileChannel active;
+    private long activeSegment;
+
+    private record Pending(CustomerDto customer, Runnable undo, Sinks.One<Void> flushed) {
+    }
+
+    public CustomerLog(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void replay(long fromSegment, Consumer<CustomerDto> customers) {
+        try {
+            for (long segment : segments()) {
+                if (segment >= fromSegment) {
+                    replaySegment(segment, customers);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Mono<Void> append(CustomerDto customer, Runnable undo) {
+        Sinks.One<Void> flushed = Sinks.one();
+        pending.add(new Pending(customer, undo, flushed));
+        if (draining.compareAndSet(false, true)) {
+            writer.schedule(this::drain);
+        }
+        return flushed.asMono();
+    }
+
+    /**
+     * Roll to a fresh segment, then rewrite the live customers under the number of the segment
+     * just closed and delete everything older. Appends keep flowing into the new segment meanwhile
+     * */
+    @Override
+    public Mono<Void> compact(Iterable<CustomerDto> liveCustomers) {
+        return Mono.fromCallable(this::roll)
+                .subscribeOn(writer)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(closed -> {
+                    try {
+                        rewrite(closed, liveCustomers);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .then();
+    }
+
+    @Override
+    public Mono<Long> checkpoint() {
+        return Mono.fromCallable(() -> roll() + 1).subscribeOn(writer);
+    }
+
+    @Override
+    public Mono<Void> truncate(long beforeSegment) {
+        return Mono.<Void>fromRunnable(() -> deleteBefore(beforeSegment))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public void close() {
+        Mono.fromRunnable(() -> {
+                    drain();
+                    closeActive();
+                })
+                .subscribeOn(writer)
+                .block();
+        writer.dispose();
+    }
+
+    private void replaySegment(long segment, Consumer<CustomerDto> customers) throws IOException {
+        Path path = segmentPath(segment);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32C checksum = new CRC32C();
+            int valid = 0;
+            while (mapped.remaining() >= HEADER_BYTES) {
+                int length = mapped.getInt();
+                int expected = mapped.getInt();
+                if (length < Integer.BYTES || length > mapped.remaining()) {
+                    break;
+                }
+                ByteBuffer body = mapped.slice(mapped.position(), length);
+                checksum.reset();
+                checksum.update(body.duplicate());
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                int id = body.getInt();
+                String name = StandardCharsets.UTF_8.decode(body).toString();
+                customers.accept(new CustomerDto(id, name));
+                mapped.position(mapped.position() + length);
+                valid = mapped.position();
+            }
+            if (valid < channel.size()) {
+                log.warn("Truncating {} from {} to {} bytes after a torn or corrupt record", path, channel.size(), valid);
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            Pending next;
+            while (batch.size() < MAX_BATCH && (next = pending.poll()) != null) {
+                batch.add(next);
+            }
+            if (batch.isEmpty()) {
+                draining.set(false);
+                // an append may have slipped in after the last poll but before the flag was cleared
+                if (pending.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * A batch that fails to be written or forced is cut back off the segment before anything else is written,
+     * otherwise recovery would stop at its torn bytes and lose every acknowledged write behind them.
+     * Its writes are then undone newest first and only failed after that, nobody hears of the failure while they are visible
+     * */
+    private void flush(List<Pending> batch) {
+        long before = -1;
+        try {
+            ensureOpen();
+            before = active.size();
+            records.clear();
+            for (Pending write : batch) {
+                records.encode(write.customer());
+            }
+            records.writeTo(active);
+            active.force(false);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to flush {} customer writes", batch.size(), e);
+            discardFrom(before);
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                undo(batch.get(i));
+            }
+            batch.forEach(write -> write.flushed().tryEmitError(e));
+            return;
+        }
+
+        batch.forEach(write -> write.flushed().tryEmitEmpty());
+        try {
+            if (active.size() >= segmentSize) {
+                roll();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to roll customer log segment {}", activeSegment, e);
+        }
+    }
+
+    private void undo(Pending write) {
+        try {
+            write.undo().run();
+        } catch (RuntimeException e) {
+            log.error("Failed to undo the write of {}", write.customer(), e);
+        }
+    }
+
+    /**
+     * Truncate the active segment back to the given size, if even that fails the segment is abandoned
+     * and the next batch starts a new one, recovery then only drops the torn tail of this one
+     * */
+    private void discardFrom(long size) {
+        if (active == null || size < 0) {
+            return;
+        }
+        try {
+            active.truncate(size);
+            active.force(false);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to cut customer log segment {} back to {} bytes, moving on to a new segment", activeSegment, size, e);
+            try {
+                active.close();
+            } catch (IOException ignored) {
+                // the channel is dropped either way
+            }
+            active = null;
+        }
+    }
+
+    private long roll() {
+        ensureOpen();
+        long closed = activeSegment;
+        closeActive();
+        open(closed + 1);
+        return closed;
+    }
+
+    /**
+     * Writes always go to a segment numbered after everything already on disk
+     * */
+    private void ensureOpen() {
+        if (active == null) {
+            List<Long> segments = segments();
+            open(segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1);
+        }
+    }
+
+    private void open(long segment) {
+        try {
+            active = openSegment(segmentPath(segment));
+            activeSegment = segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Channel new records of a segment are appended through
+     * */
+    protected FileChannel openSegment(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeActive() {
+        if (active == null) {
+            return;
+        }
+        try {
+            active.force(true);
+            active.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        active = null;
+    }
+
+    private void rewrite(long closed, Iterable<CustomerDto> liveCustomers) throws IOException {
+        Path compacting = directory.resolve(SEGMENT_PREFIX + "compacting.tmp");
+        RecordBuffer compacted = new RecordBuffer();
+        try (FileChannel channel = FileChannel.open(compacting,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (CustomerDto customer : liveCustomers) {
+                compacted.encode(customer);
+                if (compacted.size() >= RecordBuffer.FLUSH_BYTES) {
+                    compacted.writeTo(channel);
+                }
+            }
+            compacted.writeTo(channel);
+            channel.force(true);
+        }
+        Files.move(compacting, segmentPath(closed), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteBefore(closed);
+        log.info("Compacted customer log into segment {}", closed);
+    }
+
+    private void deleteBefore(long beforeSegment) {
+        try {
+            for (long segment : segments()) {
+                if (segment < beforeSegment) {
+                    Files.deleteIfExists(segmentPath(segment));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Long> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Reusable direct buffer records are encoded into before they are written out
+     * */
+    private static class RecordBuffer {
+        static final int FLUSH_BYTES = 1024 * 1024;
+
+        private final CRC32C crc = new CRC32C();
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+        void encode(CustomerDto customer) {
+            byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+            int length = Integer.BYTES + name.length;
+            if (buffer.remaining() < HEADER_BYTES + length) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(
+                        Math.max(buffer.capacity() * 2, buffer.position() + HEADER_BYTES + length));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            int start = buffer.position();
+            buffer.putInt(length);
+            buffer.putInt(0);
+            buffer.putInt(customer.getId());
+            buffer.put(name);
+            crc.reset();
+            crc.update(buffer.slice(start + HEADER_BYTES, length));
+            buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+        }
+
+        int size() {
+            return buffer.position();
+        }
+
+        void clear() {
+            buffer.clear();
+        }
+
+        void writeTo(FileChannel channel) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
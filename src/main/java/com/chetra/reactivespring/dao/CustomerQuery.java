@@ -0,0 +1,77 @@
+package com.chetra.reactivespring.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicates and projection of a customer scan, evaluated by the {@link CustomerStore} itself
+ * so rows that do not match are never turned into customers.
+ * Ids are an inclusive range, names are matched case insensitively against a glob
+ * where * stands for any run of characters and ? for a single one.
+ * Without the name projected, customers come back with their id only
+ * */
+public record CustomerQuery(int minId, int maxId, String nameLike, boolean withName) {
+    public static final CustomerQuery ALL = new CustomerQuery(Integer.MIN_VALUE, Integer.MAX_VALUE, null, true);
+
+    /**
+     * Glob match without allocating, on a mismatch after a * it retries with the * swallowing one more character
+     * */
+    static boolean like(String name, String glob) {
+        int n = 0;
+        int g = 0;
+        int star = -1;
+        int swallowed = 0;
+        while (n < name.length()) {
+            if (g < glob.length() && (glob.charAt(g) == '?' || sameIgnoringCase(glob.charAt(g), name.charAt(n)))) {
+                n++;
+                g++;
+            } else if (g < glob.length() && glob.charAt(g) == '*') {
+                star = g++;
+                swallowed = n;
+            } else if (star >= 0) {
+                g = star + 1;
+                n = ++swallowed;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    private static boolean sameIgnoringCase(char a, char b) {
+        if (a == b) {
+            return true;
+        }
+        // as String.regionMatches, some scripts only agree once lower cased
+        char upperA = Character.toUpperCase(a);
+        char upperB = Character.toUpperCase(b);
+        return upperA == upperB || Character.toLowerCase(upperA) == Character.toLowerCase(upperB);
+    }
+
+    boolean matches(String customerName) {
+        return nameLike == null || like(customerName, nameLike);
+    }
+
+    /**
+     * Whether the store has to read the name at all
+     * */
+    boolean needsName() {
+        return withName || nameLike != null;
+    }
+
+    /**
+     * Cut [from, to] into at most the given number of consecutive id ranges with the same predicates
+     * */
+    List<CustomerQuery> split(int from, int to, int chunks) {
+        long span = (long) to - from + 1;
+        long step = Math.max(1, (span + chunks - 1) / chunks);
+        List<CustomerQuery> split = new ArrayList<>(chunks);
+        for (long start = from; start <= to; start += step) {
+            split.add(new CustomerQuery((int) start, (int) Math.min(to, start + step - 1), nameLike, withName));
+        }
+        return split;
+    }
+}
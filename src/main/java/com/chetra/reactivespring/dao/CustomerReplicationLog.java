@@ -0,0 +1,130 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.codec.CompressedCustomers;
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerLogBatchDto;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Replication log of a leader, every write numbered in the order it was applied.
+ * Positions are handed out under the lock that also keeps the history and emits to followers,
+ * and writes are appended while the store still holds their entry, so followers replay writes to an id in order.
+ * A follower resuming within the history only gets what it missed. One that is new, too far behind
+ * or following an earlier run of the leader, told apart by the epoch, first gets a snapshot of the store.
+ * A follower more than buffer-size writes behind is disconnected and resumes once it reconnects
+ * */
+class CustomerReplicationLog {
+    private final Sinks.Many<Entry> sink = Sinks.many().multicast().directBestEffort();
+    private final Deque<Entry> history = new ArrayDeque<>();
+    private final CustomerProperties.Replication properties;
+    private final long epoch = System.currentTimeMillis();
+    private volatile long position;
+
+    CustomerReplicationLog(CustomerProperties.Replication properties) {
+        this.properties = properties;
+    }
+
+    synchronized void append(CustomerDto customer) {
+        Entry entry = new Entry(position + 1, customer);
+        position = entry.position;
+        if (history.size() == properties.getHistorySize()) {
+            history.removeFirst();
+        }
+        if (properties.getHistorySize() > 0) {
+            history.addLast(entry);
+        }
+        sink.tryEmitNext(entry);
+    }
+
+    long position() {
+        return position;
+    }
+
+    long epoch() {
+        return epoch;
+    }
+
+    int followers() {
+        return sink.currentSubscriberCount();
+    }
+
+    /**
+     * Batches after the given position of the given epoch, a snapshot when they cannot be replayed, then live batches.
+     * Catching up follows the follower's demand, live writes queue up to buffer-size while it does
+     * */
+    Flux<CustomerLogBatchDto> stream(long since, long sinceEpoch, Supplier<Iterable<CustomerDto>> snapshot) {
+        return Flux.defer(() -> {
+            Sinks.Many<Entry> live = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<Entry>get(properties.getBufferSize()).get());
+            Flux<Entry> catchUp;
+            Disposable subscription;
+            synchronized (this) {
+                long from = position;
+                boolean resync = since <= 0 || sinceEpoch != epoch || since > from || from - since > history.size();
+                subscription = sink.asFlux().subscribe(entry -> {
+                    if (live.tryEmitNext(entry).isFailure()) {
+                        live.tryEmitError(Exceptions.failWithOverflow(
+                                "Follower fell more than " + properties.getBufferSize() + " writes behind"));
+                    }
+                });
+                catchUp = resync
+                        ? Flux.fromIterable(snapshot.get())
+                                .map(customer -> new Entry(-1, customer))
+                                .concatWith(Flux.just(new Entry(from, null)))
+                        : Flux.fromIterable(missed(since));
+            }
+
+            int batchSize = properties.getBatchSize();
+            Flux<CustomerLogBatchDto> batches = catchUp
+                    .buffer(batchSize)
+                    .concatWith(live.asFlux()
+                            .bufferTimeout(batchSize, properties.getBatchWindow())
+                            .onBackpressureBuffer(Math.max(1, properties.getBufferSize() / batchSize), batch -> {
+                            }, BufferOverflowStrategy.ERROR))
+                    .map(this::batch);
+            Flux<CustomerLogBatchDto> heartbeats = Flux.interval(properties.getHeartbeat())
+                    .onBackpressureDrop()
+                    .map(tick -> batch(List.of()));
+            return Flux.merge(batches, heartbeats).doFinally(signal -> subscription.dispose());
+        });
+    }
+
+    private Deque<Entry> missed(long since) {
+        Deque<Entry> missed = new ArrayDeque<>();
+        for (var entries = history.descendingIterator(); entries.hasNext(); ) {
+            Entry entry = entries.next();
+            if (entry.position <= since) {
+                break;
+            }
+            missed.addFirst(entry);
+        }
+        return missed;
+    }
+
+    private CustomerLogBatchDto batch(List<Entry> entries) {
+        List<CustomerDto> customers = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (entry.customer != null) {
+                customers.add(entry.customer);
+            }
+        }
+        long batchPosition = entries.isEmpty() ? -1 : entries.get(entries.size() - 1).position;
+        return new CustomerLogBatchDto(epoch, batchPosition, position, System.currentTimeMillis(),
+                customers.size(), CompressedCustomers.compress(customers));
+    }
+
+    private record Entry(long position, CustomerDto customer) {
+    }
+}
@@ -0,0 +1,167 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Case insensitive name search indexes, kept on the heap next to either store mode.
+ * Prefixes are answered from names kept in sorted order, substrings from a trigram index
+ * by walking the ids of the rarest trigram of the query.
+ * Both only return candidate ids, callers check the current name of each customer
+ * so a match racing a rename is dropped rather than returned under its new name
+ * */
+class CustomerSearchIndex {
+    static final int GRAM = 3;
+    /**
+     * Bytes per sorted name besides its characters: skip list node and index levels, NameKey, String and byte[] headers
+     * */
+    private static final long NAME_OVERHEAD = 120;
+    /**
+     * Bytes per id in a trigram set: map node and boxed id
+     * */
+    private static final long POSTING_OVERHEAD = 48;
+    /**
+     * Bytes per distinct trigram: map node, key String and the id set with its own table
+     * */
+    private static final long GRAM_OVERHEAD = 160;
+
+    private final NavigableSet<NameKey> names = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<String, Set<Integer>> grams = new ConcurrentHashMap<>();
+    private final LongAdder nameBytes = new LongAdder();
+    private final LongAdder nameCount = new LongAdder();
+    private final LongAdder postings = new LongAdder();
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    void index(CustomerDto customer) {
+        String name = normalize(customer.getName());
+        if (names.add(new NameKey(name, customer.getId()))) {
+            nameCount.increment();
+            nameBytes.add(name.length());
+        }
+        // a gram repeated within the name is simply added again.
+        // The add happens inside compute, otherwise unindex could drop the set as emptied in between
+        // and the id would land in a set no longer in the index
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            grams.compute(name.substring(i, i + GRAM), (key, ids) -> {
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                }
+                if (ids.add(customer.getId())) {
+                    postings.increment();
+                }
+                return ids;
+            });
+        }
+    }
+
+    void unindex(CustomerDto customer) {
+        String name = normalize(customer.getName());
+        if (names.remove(new NameKey(name, customer.getId()))) {
+            nameCount.decrement();
+            nameBytes.add(-name.length());
+        }
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            grams.computeIfPresent(name.substring(i, i + GRAM), (key, ids) -> {
+                if (ids.remove(customer.getId())) {
+                    postings.decrement();
+                }
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * Ids of names starting with the normalized prefix, in name order
+     * */
+    Iterable<Integer> prefix(String prefix) {
+        return () -> new Iterator<>() {
+            private final Iterator<NameKey> keys = names.tailSet(new NameKey(prefix, Integer.MIN_VALUE)).iterator();
+            private NameKey next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Integer next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                int id = next.id();
+                next = advance();
+                return id;
+            }
+
+            private NameKey advance() {
+                if (!keys.hasNext()) {
+                    return null;
+                }
+                NameKey key = keys.next();
+                return key.name().startsWith(prefix) ? key : null;
+            }
+        };
+    }
+
+    /**
+     * Ids of names that may contain the normalized text, which needs at least {@link #GRAM} characters
+     * */
+    Iterable<Integer> contains(String text) {
+        Set<Integer> rarest = null;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            Set<Integer> ids = grams.get(text.substring(i, i + GRAM));
+            if (ids == null) {
+                return Set.of();
+            }
+            if (rarest == null || ids.size() < rarest.size()) {
+                rarest = ids;
+            }
+        }
+        return rarest;
+    }
+
+    /**
+     * Estimated heap held by both indexes, like the record overhead of {@link HeapCustomerStore}
+     * */
+    long heapBytes() {
+        return nameCount.sum() * NAME_OVERHEAD + nameBytes.sum()
+                + postings.sum() * POSTING_OVERHEAD + grams.size() * GRAM_OVERHEAD;
+    }
+
+    /**
+     * Check a name against a normalized prefix and/or substring without lowercasing the name
+     * */
+    static boolean matches(String name, String prefix, String contains) {
+        return (prefix == null || name.regionMatches(true, 0, prefix, 0, prefix.length()))
+                && (contains == null || containsIgnoreCase(name, contains));
+    }
+
+    private static boolean containsIgnoreCase(String name, String text) {
+        for (int i = 0; i + text.length() <= name.length(); i++) {
+            if (name.regionMatches(true, i, text, 0, text.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record NameKey(String name, int id) implements Comparable<NameKey> {
+        @Override
+        public int compareTo(NameKey other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : Integer.compare(id, other.id);
+        }
+    }
+}
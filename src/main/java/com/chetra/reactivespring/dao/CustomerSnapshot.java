@@ -0,0 +1,138 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Point-in-time image of the store in a columnar layout:
+ * a 32 byte header, an int[count] id column, an int[count + 1] offset column and a UTF-8 name blob
+ * addressed by the offsets. The file is written through a mapping of its final size and loaded with
+ * a single read-only mapping. The header records the journal segment replay has to resume from
+ * */
+@Slf4j
+public class CustomerSnapshot {
+    public static final CustomerSnapshot NONE = new CustomerSnapshot(null);
+
+    private static final int MAGIC = 0x43534E50;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private final Path path;
+
+    public CustomerSnapshot(Path path) {
+        this.path = path;
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * Feed every customer of the snapshot to the consumer
+     * and return the journal segment to replay from, 0 without a snapshot
+     * */
+    public long load(Consumer<CustomerDto> customers) {
+        if (path == null || !Files.exists(path)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a customer snapshot: " + path);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IOException("Not a customer snapshot: " + path);
+            }
+            long segment = mapped.getLong(8);
+            int count = mapped.getInt(16);
+            int nameBytes = mapped.getInt(20);
+            int expected = mapped.getInt(24);
+            if (count < 0 || nameBytes < 0 || HEADER_BYTES + (2L * count + 1) * Integer.BYTES + nameBytes != channel.size()) {
+                throw new IOException("Corrupt customer snapshot: " + path);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(mapped.slice(HEADER_BYTES, mapped.limit() - HEADER_BYTES));
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Corrupt customer snapshot: " + path);
+            }
+
+            IntBuffer ids = mapped.slice(HEADER_BYTES, count * Integer.BYTES).asIntBuffer();
+            IntBuffer offsets = mapped.slice(HEADER_BYTES + count * Integer.BYTES, (count + 1) * Integer.BYTES).asIntBuffer();
+            int namesStart = HEADER_BYTES + (2 * count + 1) * Integer.BYTES;
+            byte[] name = new byte[64];
+            for (int i = 0; i < count; i++) {
+                int start = offsets.get(i);
+                int length = offsets.get(i + 1) - start;
+                if (name.length < length) {
+                    name = new byte[Math.max(length, name.length * 2)];
+                }
+                mapped.get(namesStart + start, name, 0, length);
+                customers.accept(new CustomerDto(ids.get(i), new String(name, 0, length, StandardCharsets.UTF_8)));
+            }
+            log.info("Loaded {} customers from snapshot {}", count, path);
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot load customer snapshot " + path, e);
+        }
+    }
+
+    /**
+     * Write the customers to a temporary file and atomically move it into place.
+     * The iteration may see concurrent writes, replaying the journal from the given segment covers them
+     * */
+    public void write(Iterable<CustomerDto> customers, long journalSegment) throws IOException {
+        int[] ids = new int[1024];
+        int[] offsets = new int[1025];
+        byte[] names = new byte[16 * 1024];
+        int count = 0;
+        for (CustomerDto customer : customers) {
+            byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+            if (count + 1 == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                offsets = Arrays.copyOf(offsets, ids.length + 1);
+            }
+            int start = offsets[count];
+            if (start + name.length > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length * 2, start + name.length));
+            }
+            System.arraycopy(name, 0, names, start, name.length);
+            ids[count] = customer.getId();
+            offsets[++count] = start + name.length;
+        }
+
+        int nameBytes = offsets[count];
+        long size = HEADER_BYTES + (2L * count + 1) * Integer.BYTES + nameBytes;
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.putInt(MAGIC).putInt(VERSION).putLong(journalSegment).putInt(count).putInt(nameBytes);
+            mapped.position(HEADER_BYTES);
+            mapped.asIntBuffer().put(ids, 0, count).put(offsets, 0, count + 1);
+            mapped.position(HEADER_BYTES + (2 * count + 1) * Integer.BYTES);
+            mapped.put(names, 0, nameBytes);
+            CRC32C crc = new CRC32C();
+            crc.update(mapped.slice(HEADER_BYTES, (int) size - HEADER_BYTES));
+            mapped.putInt(24, (int) crc.getValue());
+            mapped.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote snapshot of {} customers to {}", count, path);
+    }
+}
@@ -0,0 +1,76 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates of the stored customers, kept up to date by every write instead of recomputed by scanning.
+ * A write adjusts a few counters by the difference between the previous and the new customer,
+ * reads cost the number of distinct prefixes and lengths, however many customers are stored.
+ * Each counter is exact once writes settle, a read racing writes may see some of their counters adjusted and not others
+ * */
+class CustomerStats {
+    private final int prefixLength;
+    private final LongAdder count = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> byPrefix = new ConcurrentHashMap<>();
+    private final LongAdder[] byNameLength;
+
+    CustomerStats(CustomerProperties.Stats properties) {
+        this.prefixLength = properties.getPrefixLength();
+        this.byNameLength = new LongAdder[properties.getMaxNameLength() + 1];
+        for (int i = 0; i < byNameLength.length; i++) {
+            byNameLength[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Account for a write, previous is the customer it replaced or null when it inserted one,
+     * customer is null when the write removed previous
+     * */
+    void update(CustomerDto previous, CustomerDto customer) {
+        if (customer == null) {
+            count.decrement();
+            count(previous.getName(), -1);
+            return;
+        }
+        if (previous == null) {
+            count.increment();
+        } else if (previous.getName().equals(customer.getName())) {
+            return;
+        } else {
+            count(previous.getName(), -1);
+        }
+        count(customer.getName(), 1);
+    }
+
+    CustomerStatsDto snapshot() {
+        SortedMap<String, Long> prefixes = new TreeMap<>();
+        byPrefix.forEach((prefix, counter) -> {
+            long sum = counter.sum();
+            if (sum > 0) {
+                prefixes.put(prefix, sum);
+            }
+        });
+        SortedMap<Integer, Long> lengths = new TreeMap<>();
+        for (int length = 0; length < byNameLength.length; length++) {
+            long sum = byNameLength[length].sum();
+            if (sum > 0) {
+                lengths.put(length, sum);
+            }
+        }
+        return new CustomerStatsDto(count.sum(), prefixes, lengths);
+    }
+
+    private void count(String name, int delta) {
+        String prefix = CustomerSearchIndex.normalize(name.substring(0, Math.min(prefixLength, name.length())));
+        byPrefix.computeIfAbsent(prefix, key -> new LongAdder()).add(delta);
+        byNameLength[Math.min(name.length(), byNameLength.length - 1)].add(delta);
+    }
+}
@@ -0,0 +1,63 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.CustomerDto;
+
+import java.util.function.Consumer;
+
+/**
+ * Customer records with their id and name indexes, the storage layout behind {@link CustomerDao}.
+ * Writes to the same id are serialized, the callback passed with a write gets the customer it replaced
+ * and runs before the next write to that id can start, so indexes and the journal follow the order writes were applied.
+ * Reads are weakly consistent and return freshly materialized or immutable customers
+ * */
+public interface CustomerStore {
+    static CustomerStore create(CustomerProperties.Store properties) {
+        return switch (properties.getMode()) {
+            case HEAP -> new HeapCustomerStore();
+            case OFF_HEAP -> new OffHeapCustomerStore((int) properties.getSlabSize().toBytes());
+        };
+    }
+
+    CustomerDto get(int id);
+
+    void put(CustomerDto customer, Consumer<CustomerDto> whileLocked);
+
+    /**
+     * Store the customer only if its id is free
+     * */
+    boolean putIfAbsent(CustomerDto customer, Consumer<CustomerDto> whileLocked);
+
+    /**
+     * Store the replacement, or remove the id when it is null, only while the id still holds the expected customer.
+     * The callback gets the customer replaced
+     * */
+    boolean replace(CustomerDto expected, CustomerDto replacement, Consumer<CustomerDto> whileLocked);
+
+    /**
+     * Customers in id order, after the given id or from the start when null
+     * */
+    Iterable<CustomerDto> list(Integer after);
+
+    /**
+     * Customers matching the query in id order, the name is only read when the query filters or projects it
+     * */
+    Iterable<CustomerDto> scan(CustomerQuery query);
+
+    Iterable<CustomerDto> getByName(String name);
+
+    /**
+     * Every customer in no particular order, each one at least once
+     * */
+    Iterable<CustomerDto> values();
+
+    int size();
+
+    Footprint footprint();
+
+    /**
+     * Memory held by the store. Heap bytes of the object layout are an estimate
+     * */
+    record Footprint(long records, long heapBytes, long offHeapBytes, long offHeapLiveBytes) {
+    }
+}
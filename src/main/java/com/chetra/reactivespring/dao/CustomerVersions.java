@@ -0,0 +1,47 @@
+package com.chetra.reactivespring.dao;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Version stamps of customers written since startup and of the store as a whole.
+ * A stamp is the write time in microseconds, bumped past the previous stamp when the clock did not move on,
+ * so stamps are unique, only grow, and still tell when a customer was last modified.
+ * Customers loaded at startup share the startup stamp, which is newer than anything written before the restart.
+ * Stamps are taken after the write became visible, so a reader who saw a stamp also sees the write.
+ * Stamps live in a fixed number of slots indexed by id rather than one entry per customer ever written,
+ * ids sharing a slot report the latest stamp of any of them. That only ever moves a version early,
+ * costing a needless full response, never a 304 for a customer that changed
+ * */
+class CustomerVersions {
+    private final AtomicLong clock = new AtomicLong(now());
+    private final long loaded = clock.get();
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    CustomerVersions(int slots) {
+        int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    long touch(int id) {
+        long stamp = clock.updateAndGet(last -> Math.max(last + 1, now()));
+        slots.accumulateAndGet(id & mask, stamp, Math::max);
+        return stamp;
+    }
+
+    long version(int id) {
+        long stamp = slots.get(id & mask);
+        return stamp == 0 ? loaded : stamp;
+    }
+
+    long generation() {
+        return clock.get();
+    }
+
+    private static long now() {
+        return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,180 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Customers kept as objects in a concurrent map keyed by id with a secondary index on name
+ * and an ordered id index used for listing and keyset pagination.
+ * Stored entries are never mutated, every write replaces the entry with a fresh copy
+ * */
+class HeapCustomerStore implements CustomerStore {
+    /**
+     * Bytes per customer besides the name bytes: map node, boxed id, CustomerDto, String
+     * and byte[] headers, skip list node and name index entry, measured with CustomerStoreFootprint
+     * */
+    private static final long RECORD_OVERHEAD = 400;
+
+    private final ConcurrentMap<Integer, CustomerDto> customers = new ConcurrentHashMap<>();
+    private final NavigableSet<Integer> idIndex = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<String, Set<Integer>> nameIndex = new ConcurrentHashMap<>();
+    private final LongAdder nameBytes = new LongAdder();
+
+    @Override
+    public CustomerDto get(int id) {
+        return customers.get(id);
+    }
+
+    @Override
+    public void put(CustomerDto customer, Consumer<CustomerDto> whileLocked) {
+        customers.compute(customer.getId(), (key, previous) -> {
+            if (previous == null) {
+                index(customer);
+            } else if (!previous.getName().equals(customer.getName())) {
+                unindexName(previous);
+                indexName(customer);
+            }
+            whileLocked.accept(previous);
+            return customer;
+        });
+    }
+
+    @Override
+    public boolean putIfAbsent(CustomerDto customer, Consumer<CustomerDto> whileLocked) {
+        return customers.computeIfAbsent(customer.getId(), key -> {
+            index(customer);
+            whileLocked.accept(null);
+            return customer;
+        }) == customer;
+    }
+
+    @Override
+    public boolean replace(CustomerDto expected, CustomerDto replacement, Consumer<CustomerDto> whileLocked) {
+        boolean[] replaced = new boolean[1];
+        customers.computeIfPresent(expected.getId(), (key, current) -> {
+            if (!current.equals(expected)) {
+                return current;
+            }
+            if (replacement == null) {
+                idIndex.remove(key);
+                unindexName(current);
+            } else if (!current.getName().equals(replacement.getName())) {
+                unindexName(current);
+                indexName(replacement);
+            }
+            whileLocked.accept(current);
+            replaced[0] = true;
+            return replacement;
+        });
+        return replaced[0];
+    }
+
+    @Override
+    public Iterable<CustomerDto> list(Integer after) {
+        Set<Integer> ids = after == null ? idIndex : idIndex.tailSet(after, false);
+        return () -> new LookupIterator(ids.iterator(), CustomerQuery.ALL);
+    }
+
+    @Override
+    public Iterable<CustomerDto> scan(CustomerQuery query) {
+        if (query.minId() > query.maxId()) {
+            return List.of();
+        }
+        Set<Integer> ids = idIndex.subSet(query.minId(), true, query.maxId(), true);
+        return () -> new LookupIterator(ids.iterator(), query);
+    }
+
+    @Override
+    public Iterable<CustomerDto> getByName(String name) {
+        Set<Integer> ids = nameIndex.getOrDefault(name, Set.of());
+        return () -> new LookupIterator(ids.iterator(), CustomerQuery.ALL);
+    }
+
+    @Override
+    public Iterable<CustomerDto> values() {
+        return customers.values();
+    }
+
+    @Override
+    public int size() {
+        return customers.size();
+    }
+
+    @Override
+    public Footprint footprint() {
+        long records = customers.size();
+        return new Footprint(records, records * RECORD_OVERHEAD + nameBytes.sum(), 0, 0);
+    }
+
+    private void index(CustomerDto customer) {
+        idIndex.add(customer.getId());
+        indexName(customer);
+    }
+
+    private void indexName(CustomerDto customer) {
+        nameIndex.compute(customer.getName(), (name, ids) -> {
+            Set<Integer> indexed = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            indexed.add(customer.getId());
+            return indexed;
+        });
+        nameBytes.add(customer.getName().length());
+    }
+
+    private void unindexName(CustomerDto customer) {
+        nameIndex.computeIfPresent(customer.getName(), (name, ids) -> {
+            ids.remove(customer.getId());
+            return ids.isEmpty() ? null : ids;
+        });
+        nameBytes.add(-customer.getName().length());
+    }
+
+    /**
+     * Customers of indexed ids matching the query, skipping ids whose customer is not visible yet
+     * */
+    private final class LookupIterator implements Iterator<CustomerDto> {
+        private final Iterator<Integer> ids;
+        private final CustomerQuery query;
+        private CustomerDto next;
+
+        private LookupIterator(Iterator<Integer> ids, CustomerQuery query) {
+            this.ids = ids;
+            this.query = query;
+            this.next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public CustomerDto next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            CustomerDto customer = next;
+            next = advance();
+            return customer;
+        }
+
+        private CustomerDto advance() {
+            while (ids.hasNext()) {
+                CustomerDto customer = customers.get(ids.next());
+                if (customer != null && query.matches(customer.getName())) {
+                    return query.withName() ? customer : new CustomerDto(customer.getId(), null);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,688 @@
+package com.chetra.reactivespring.dao;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Customers encoded into direct {@link ByteBuffer} slabs outside the heap.
+ * A record is [int id][int name length][long next id with the same name hash][utf-8 name]
+ * and is addressed by slab and offset packed into a long.
+ * Ids map to record addresses and name hashes to the first id of a chain linked through the records,
+ * both in primitive open addressing tables, id order comes from a paged bitset.
+ * A {@link CustomerDto} is only created when a record is read.
+ * Writes to the tables and slabs are serialized, the write lock is only held while they change in place,
+ * reads run optimistically and retry under the read lock when a write got in between.
+ * The callback of a write runs once that lock is released, under a lock striped by id,
+ * so the journal and indexes of other customers are not waited on and writes to the same id stay in order.
+ * Overwritten records are reclaimed by copying the live ones into fresh slabs
+ * once they take up more space than the live ones, readers carry on with the old slabs until they are swapped in
+ * */
+class OffHeapCustomerStore implements CustomerStore {
+    private static final int HEADER = 16;
+    private static final long NONE = -1;
+    private static final int ITERATION_BATCH = 1024;
+    private static final int STRIPES = 64;
+
+    private final StampedLock lock = new StampedLock();
+    private final ReentrantLock writer = new ReentrantLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final int slabSize;
+    private final IntLongTable addresses = new IntLongTable();
+    private final IntLongTable names = new IntLongTable();
+    private final IdBits order = new IdBits();
+    private ByteBuffer[] slabs = new ByteBuffer[0];
+    private int position;
+    private int size;
+    private long allocatedBytes;
+    private long usedBytes;
+    private long liveBytes;
+
+    OffHeapCustomerStore(int slabSize) {
+        this.slabSize = slabSize;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public CustomerDto get(int id) {
+        return read(() -> {
+            long address = addresses.get(id);
+            return address == NONE ? null : record(address);
+        });
+    }
+
+    @Override
+    public void put(CustomerDto customer, Consumer<CustomerDto> whileLocked) {
+        ReentrantLock stripe = stripe(customer.getId());
+        stripe.lock();
+        try {
+            CustomerDto replaced;
+            writer.lock();
+            try {
+                long stamp = lock.writeLock();
+                try {
+                    long previous = addresses.get(customer.getId());
+                    replaced = previous == NONE ? null : record(previous);
+                    write(customer);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                compactIfNeeded();
+            } finally {
+                writer.unlock();
+            }
+            whileLocked.accept(replaced);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(CustomerDto customer, Consumer<CustomerDto> whileLocked) {
+        ReentrantLock stripe = stripe(customer.getId());
+        stripe.lock();
+        try {
+            writer.lock();
+            try {
+                long stamp = lock.writeLock();
+                try {
+                    if (addresses.get(customer.getId()) != NONE) {
+                        return false;
+                    }
+                    write(customer);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                compactIfNeeded();
+            } finally {
+                writer.unlock();
+            }
+            whileLocked.accept(null);
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(CustomerDto expected, CustomerDto replacement, Consumer<CustomerDto> whileLocked) {
+        ReentrantLock stripe = stripe(expected.getId());
+        stripe.lock();
+        try {
+            CustomerDto replaced;
+            writer.lock();
+            try {
+                long stamp = lock.writeLock();
+                try {
+                    long address = addresses.get(expected.getId());
+                    replaced = address == NONE ? null : record(address);
+                    if (!expected.equals(replaced)) {
+                        return false;
+                    }
+                    if (replacement == null) {
+                        remove(expected.getId(), address);
+                    } else {
+                        write(replacement);
+                    }
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                compactIfNeeded();
+            } finally {
+                writer.unlock();
+            }
+            whileLocked.accept(replaced);
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public Iterable<CustomerDto> list(Integer after) {
+        long from = after == null ? 0 : IdBits.index(after) + 1;
+        return () -> new Iterator<>() {
+            private long next = order.next(from);
+
+            @Override
+            public boolean hasNext() {
+                return next != NONE;
+            }
+
+            @Override
+            public CustomerDto next() {
+                if (next == NONE) {
+                    throw new NoSuchElementException();
+                }
+                int id = IdBits.id(next);
+                next = order.next(next + 1);
+                return get(id);
+            }
+        };
+    }
+
+    /**
+     * Walks the id bits of the range, testing each record in place
+     * so the name is only decoded when filtered or projected and rejected records never become customers
+     * */
+    @Override
+    public Iterable<CustomerDto> scan(CustomerQuery query) {
+        long last = IdBits.index(query.maxId());
+        return () -> new Iterator<>() {
+            private long next = IdBits.index(query.minId());
+            private CustomerDto customer = advance();
+
+            @Override
+            public boolean hasNext() {
+                return customer != null;
+            }
+
+            @Override
+            public CustomerDto next() {
+                if (customer == null) {
+                    throw new NoSuchElementException();
+                }
+                CustomerDto found = customer;
+                customer = advance();
+                return found;
+            }
+
+            private CustomerDto advance() {
+                while ((next = order.next(next)) != NONE && next <= last) {
+                    int id = IdBits.id(next++);
+                    CustomerDto found = read(() -> match(id, query));
+                    if (found != null) {
+                        return found;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public Iterable<CustomerDto> getByName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return read(() -> {
+            List<CustomerDto> found = new ArrayList<>();
+            long id = names.get(name.hashCode());
+            // bounded so a chain torn by a concurrent write cannot loop, validation then retries
+            for (int steps = 0; id != NONE && steps <= size; steps++) {
+                long address = addresses.get((int) id);
+                if (nameEquals(address, bytes)) {
+                    found.add(record(address));
+                }
+                id = next(address);
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Walks the id table a batch at a time under the read lock,
+     * starting over when the table was resized in between
+     * */
+    @Override
+    public Iterable<CustomerDto> values() {
+        return () -> new Iterator<>() {
+            private int slot;
+            private int capacity = -1;
+            private Iterator<CustomerDto> batch = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!batch.hasNext()) {
+                    if (capacity != -1 && slot >= capacity) {
+                        return false;
+                    }
+                    batch = nextBatch();
+                }
+                return true;
+            }
+
+            @Override
+            public CustomerDto next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.next();
+            }
+
+            private Iterator<CustomerDto> nextBatch() {
+                long stamp = lock.readLock();
+                try {
+                    if (capacity != addresses.capacity()) {
+                        capacity = addresses.capacity();
+                        slot = 0;
+                    }
+                    List<CustomerDto> customers = new ArrayList<>(ITERATION_BATCH);
+                    for (; slot < capacity && customers.size() < ITERATION_BATCH; slot++) {
+                        if (addresses.occupied(slot)) {
+                            customers.add(record(addresses.valueAt(slot)));
+                        }
+                    }
+                    return customers.iterator();
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return read(() -> size);
+    }
+
+    @Override
+    public Footprint footprint() {
+        return read(() -> new Footprint(size,
+                addresses.heapBytes() + names.heapBytes() + order.heapBytes(),
+                allocatedBytes,
+                liveBytes));
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T value = reader.get();
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // a write moved records or resized a table under the read, retry under the lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void write(CustomerDto customer) {
+        int id = customer.getId();
+        byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+        long previous = addresses.get(id);
+
+        long next;
+        if (previous != NONE && nameEquals(previous, name)) {
+            // same chain position, the chain links ids rather than addresses
+            next = next(previous);
+        } else {
+            if (previous != NONE) {
+                unlink(id, previous);
+            }
+            int hash = customer.getName().hashCode();
+            next = names.get(hash);
+            names.put(hash, Integer.toUnsignedLong(id));
+        }
+
+        if (previous == NONE) {
+            size++;
+            order.set(id);
+        } else {
+            liveBytes -= length(previous);
+        }
+        long address = reserve(HEADER + name.length);
+        slab(address)
+                .putInt(offset(address), id)
+                .putInt(offset(address) + 4, name.length)
+                .putLong(offset(address) + 8, next)
+                .put(offset(address) + HEADER, name);
+        addresses.put(id, address);
+    }
+
+    private void remove(int id, long address) {
+        unlink(id, address);
+        addresses.remove(id);
+        order.clear(id);
+        size--;
+        liveBytes -= length(address);
+    }
+
+    /**
+     * Take the id out of the name chain its previous record is in
+     * */
+    private void unlink(int id, long previous) {
+        int hash = name(previous).hashCode();
+        long link = Integer.toUnsignedLong(id);
+        long head = names.get(hash);
+        if (head == link) {
+            names.put(hash, next(previous));
+            return;
+        }
+        for (long current = head; current != NONE; ) {
+            long address = addresses.get((int) current);
+            current = next(address);
+            if (current == link) {
+                slab(address).putLong(offset(address) + 8, next(previous));
+                return;
+            }
+        }
+    }
+
+    private long reserve(int length) {
+        if (length > slabSize) {
+            throw new IllegalArgumentException("Customer name does not fit in a slab of " + slabSize + " bytes");
+        }
+        if (slabs.length == 0 || position + length > slabSize) {
+            slabs = Arrays.copyOf(slabs, slabs.length + 1);
+            slabs[slabs.length - 1] = ByteBuffer.allocateDirect(slabSize);
+            allocatedBytes += slabSize;
+            position = 0;
+        }
+        long address = ((long) (slabs.length - 1) << 32) | position;
+        position += length;
+        usedBytes += length;
+        liveBytes += length;
+        return address;
+    }
+
+    /**
+     * Copy live records into fresh slabs while holding off other writers only,
+     * then swap slabs and addresses in under the write lock. The old slabs are freed once no reader holds them
+     * */
+    private void compactIfNeeded() {
+        long garbage = usedBytes - liveBytes;
+        if (garbage <= liveBytes || garbage <= slabSize) {
+            return;
+        }
+
+        List<ByteBuffer> fresh = new ArrayList<>();
+        long[] moved = addresses.copyValues();
+        int freshPosition = slabSize;
+        long live = 0;
+        for (int slot = 0; slot < moved.length; slot++) {
+            if (addresses.occupied(slot)) {
+                long address = addresses.valueAt(slot);
+                ByteBuffer slab = slab(address);
+                int length = HEADER + slab.getInt(offset(address) + 4);
+                if (freshPosition + length > slabSize) {
+                    fresh.add(ByteBuffer.allocateDirect(slabSize));
+                    freshPosition = 0;
+                }
+                fresh.get(fresh.size() - 1).put(freshPosition, slab, offset(address), length);
+                moved[slot] = ((long) (fresh.size() - 1) << 32) | freshPosition;
+                freshPosition += length;
+                live += length;
+            }
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            slabs = fresh.toArray(ByteBuffer[]::new);
+            addresses.setValues(moved);
+            position = freshPosition;
+            allocatedBytes = (long) slabs.length * slabSize;
+            usedBytes = live;
+            liveBytes = live;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private CustomerDto match(int id, CustomerQuery query) {
+        long address = addresses.get(id);
+        if (address == NONE) {
+            return null;
+        }
+        if (!query.needsName()) {
+            return new CustomerDto(id, null);
+        }
+        String name = name(address);
+        if (!query.matches(name)) {
+            return null;
+        }
+        return new CustomerDto(id, query.withName() ? name : null);
+    }
+
+    private CustomerDto record(long address) {
+        return new CustomerDto(slab(address).getInt(offset(address)), name(address));
+    }
+
+    private String name(long address) {
+        return new String(nameBytes(address), StandardCharsets.UTF_8);
+    }
+
+    private byte[] nameBytes(long address) {
+        ByteBuffer slab = slab(address);
+        int length = slab.getInt(offset(address) + 4);
+        if (length < 0 || length > slabSize) {
+            throw new IllegalStateException("Torn read of record at " + address);
+        }
+        byte[] name = new byte[length];
+        slab.get(offset(address) + HEADER, name);
+        return name;
+    }
+
+    private boolean nameEquals(long address, byte[] name) {
+        ByteBuffer slab = slab(address);
+        int offset = offset(address);
+        if (slab.getInt(offset + 4) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (slab.get(offset + HEADER + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long next(long address) {
+        return slab(address).getLong(offset(address) + 8);
+    }
+
+    private int length(long address) {
+        return HEADER + slab(address).getInt(offset(address) + 4);
+    }
+
+    private ReentrantLock stripe(int id) {
+        return stripes[IntLongTable.mix(id) & (STRIPES - 1)];
+    }
+
+    private ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Open addressing int to long map with linear probing.
+     * Removed keys keep their slot with a NONE value, putting the key again reuses it
+     * */
+    private static final class IntLongTable {
+        private static final long FREE = Long.MIN_VALUE;
+
+        private int[] keys = new int[16];
+        private long[] values = filled(16);
+        private int size;
+
+        long get(int key) {
+            int[] keys = this.keys;
+            long[] values = this.values;
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask, probes = 0; probes <= mask; slot = (slot + 1) & mask, probes++) {
+                long value = values[slot];
+                if (value == FREE) {
+                    return NONE;
+                }
+                if (keys[slot] == key) {
+                    return value;
+                }
+            }
+            return NONE;
+        }
+
+        void put(int key, long value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (values[slot] != FREE && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (values[slot] == FREE) {
+                size++;
+                keys[slot] = key;
+            }
+            values[slot] = value;
+        }
+
+        void remove(int key) {
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; values[slot] != FREE; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    values[slot] = NONE;
+                    return;
+                }
+            }
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        boolean occupied(int slot) {
+            return values[slot] != FREE && values[slot] != NONE;
+        }
+
+        long valueAt(int slot) {
+            return values[slot];
+        }
+
+        long[] copyValues() {
+            return values.clone();
+        }
+
+        /**
+         * Values for the same keys in the same slots, as handed out by {@link #copyValues}
+         * */
+        void setValues(long[] values) {
+            this.values = values;
+        }
+
+        long heapBytes() {
+            return keys.length * 4L + values.length * 8L;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            long[] oldValues = values;
+            int[] newKeys = new int[capacity];
+            long[] newValues = filled(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != FREE) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (newValues[slot] != FREE) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newKeys[slot] = oldKeys[i];
+                    newValues[slot] = oldValues[i];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        private static long[] filled(int capacity) {
+            long[] values = new long[capacity];
+            Arrays.fill(values, FREE);
+            return values;
+        }
+
+        private static int mix(int key) {
+            int hash = key * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Bitset over the whole int range in lazily allocated 8KB pages,
+     * ids are mapped to unsigned indexes so index order is signed id order
+     * */
+    private static final class IdBits {
+        private static final int PAGE_BITS = 16;
+        private static final int PAGES = 1 << (32 - PAGE_BITS);
+
+        private final AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(PAGES);
+        private int allocated;
+
+        static long index(int id) {
+            return Integer.toUnsignedLong(id ^ Integer.MIN_VALUE);
+        }
+
+        static int id(long index) {
+            return (int) index ^ Integer.MIN_VALUE;
+        }
+
+        void set(int id) {
+            long index = index(id);
+            int page = (int) (index >>> PAGE_BITS);
+            AtomicLongArray words = pages.get(page);
+            if (words == null) {
+                words = new AtomicLongArray(1 << (PAGE_BITS - 6));
+                pages.set(page, words);
+                allocated++;
+            }
+            int bit = (int) index & ((1 << PAGE_BITS) - 1);
+            words.set(bit >>> 6, words.get(bit >>> 6) | (1L << bit));
+        }
+
+        void clear(int id) {
+            long index = index(id);
+            AtomicLongArray words = pages.get((int) (index >>> PAGE_BITS));
+            if (words != null) {
+                int bit = (int) index & ((1 << PAGE_BITS) - 1);
+                words.set(bit >>> 6, words.get(bit >>> 6) & ~(1L << bit));
+            }
+        }
+
+        /**
+         * First set index at or after the given one, NONE when there is none
+         * */
+        long next(long from) {
+            for (int page = (int) (from >>> PAGE_BITS); page < PAGES; page++, from = (long) page << PAGE_BITS) {
+                AtomicLongArray words = pages.get(page);
+                if (words == null) {
+                    continue;
+                }
+                int bit = (int) from & ((1 << PAGE_BITS) - 1);
+                for (int word = bit >>> 6; word < words.length(); word++) {
+                    long bits = words.get(word) & (word == bit >>> 6 ? -1L << bit : -1L);
+                    if (bits != 0) {
+                        return ((long) page << PAGE_BITS) + ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                    }
+                }
+            }
+            return NONE;
+        }
+
+        long heapBytes() {
+            return PAGES * 4L + allocated * (8L << (PAGE_BITS - 6));
+        }
+    }
+}
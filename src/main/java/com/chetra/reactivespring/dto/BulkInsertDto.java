@@ -0,0 +1,17 @@
+package com.chetra.reactivespring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkInsertDto {
+    private long accepted;
+    private long rejected;
+
+    public BulkInsertDto plus(BulkInsertDto other) {
+        return new BulkInsertDto(accepted + other.accepted, rejected + other.rejected);
+    }
+}
@@ -0,0 +1,15 @@
+package com.chetra.reactivespring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheStatsDto {
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+}
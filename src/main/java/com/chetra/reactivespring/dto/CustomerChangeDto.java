@@ -0,0 +1,16 @@
+package com.chetra.reactivespring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A customer as written, numbered in the order writes were published
+ * */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerChangeDto {
+    private long sequence;
+    private CustomerDto customer;
+}
@@ -1,10 +1,17 @@
 package com.chetra.reactivespring.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
+/**
+ * A customer, fields left out of a listing's projection are null and not serialized
+ * */
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class CustomerDto {
     private Integer id;
     private String name;
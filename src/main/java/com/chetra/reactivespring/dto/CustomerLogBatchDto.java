@@ -0,0 +1,23 @@
+package com.chetra.reactivespring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A batch of the leader's replication log.
+ * Position is where a follower stands once the batch is applied, -1 while a snapshot is still being sent
+ * and for heartbeats, which carry no customers and only report the leader's head.
+ * Customers are compressed together, consecutive writes share most of their bytes
+ * */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerLogBatchDto {
+    private long epoch;
+    private long position;
+    private long head;
+    private long timestamp;
+    private int count;
+    private byte[] customers;
+}
@@ -0,0 +1,34 @@
+package com.chetra.reactivespring.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Aggregates over every stored customer. Names are counted by their lowercased prefix and by length,
+ * the largest length also counts every longer name
+ * */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerStatsDto {
+    private long count;
+    private SortedMap<String, Long> countByPrefix = new TreeMap<>();
+    private SortedMap<Integer, Long> countByNameLength = new TreeMap<>();
+
+    public CustomerStatsDto plus(CustomerStatsDto other) {
+        return new CustomerStatsDto(count + other.count,
+                sum(countByPrefix, other.countByPrefix),
+                sum(countByNameLength, other.countByNameLength));
+    }
+
+    private static <K> SortedMap<K, Long> sum(Map<K, Long> left, Map<K, Long> right) {
+        SortedMap<K, Long> sum = new TreeMap<>(left);
+        right.forEach((key, count) -> sum.merge(key, count, Long::sum));
+        return sum;
+    }
+}
@@ -0,0 +1,84 @@
+package com.chetra.reactivespring.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timers and in-flight gauges for the reactive chains of the service and the store.
+ * Meters are registered once per operation so wrapping a chain does no registry lookups
+ * */
+@Component
+@RequiredArgsConstructor
+public class CustomerMetrics {
+    @Getter
+    private final MeterRegistry registry;
+
+    public Operation operation(String layer, String name) {
+        return new Operation(registry, layer, name);
+    }
+
+    public static class Operation {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Timer success;
+        private final Timer error;
+        private final Timer cancel;
+
+        private Operation(MeterRegistry registry, String layer, String name) {
+            Gauge.builder(layer + ".in.flight", inFlight, AtomicInteger::get)
+                    .tag("operation", name)
+                    .register(registry);
+            success = timer(registry, layer, name, "success");
+            error = timer(registry, layer, name, "error");
+            cancel = timer(registry, layer, name, "cancelled");
+        }
+
+        private static Timer timer(MeterRegistry registry, String layer, String name, String outcome) {
+            return Timer.builder(layer + ".duration")
+                    .tag("operation", name)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+
+        /**
+         * Time from subscription to termination of the chain
+         * */
+        public <T> Mono<T> timed(Mono<T> mono) {
+            return Mono.defer(() -> {
+                long start = start();
+                return mono.doFinally(signal -> stop(start, signal));
+            });
+        }
+
+        public <T> Flux<T> timed(Flux<T> flux) {
+            return Flux.defer(() -> {
+                long start = start();
+                return flux.doFinally(signal -> stop(start, signal));
+            });
+        }
+
+        private long start() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        private void stop(long start, SignalType signal) {
+            inFlight.decrementAndGet();
+            Timer timer = switch (signal) {
+                case ON_ERROR -> error;
+                case CANCEL -> cancel;
+                default -> success;
+            };
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.chetra.reactivespring.replication;
+
+import com.chetra.reactivespring.codec.CompressedCustomers;
+import com.chetra.reactivespring.codec.LengthDelimited;
+import com.chetra.reactivespring.config.BinaryCodecConfig;
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.CustomerLogBatchDto;
+import com.chetra.reactivespring.metrics.CustomerMetrics;
+import com.chetra.reactivespring.service.CustomerService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the replication log of the leader and applies it through the {@link CustomerService},
+ * so cached customers are invalidated like for any other write.
+ * The stream resumes from the last applied position after a disconnect, the leader sends a snapshot instead
+ * when it no longer has that position or restarted since.
+ * Batches are applied one after the other, reads waiting on a position token are released as they complete
+ * */
+@Slf4j
+@Component
+public class CustomerFollower {
+    private final CustomerProperties.Replication properties;
+    private final CustomerService customerService;
+    private final WebClient client;
+    private final Sinks.Many<Applied> progress = Sinks.many().replay().latest();
+    private final Timer delay;
+    private volatile Applied applied = new Applied(0, 0);
+    private volatile long head;
+
+    public CustomerFollower(CustomerProperties properties, CustomerService customerService, CustomerMetrics metrics,
+                            WebClient.Builder builder) {
+        this.properties = properties.getReplication();
+        this.customerService = customerService;
+        this.client = builder
+                .codecs(codecs -> BinaryCodecConfig.register(codecs.customCodecs()))
+                .build();
+
+        MeterRegistry registry = metrics.getRegistry();
+        this.delay = Timer.builder("customer.replication.delay")
+                .description("Time from a write being batched on the leader to it being applied here")
+                .register(registry);
+        Gauge.builder("customer.replication.position", this, follower -> follower.applied.position())
+                .description("Position of the last write applied from the leader")
+                .tags("role", "follower")
+                .register(registry);
+        Gauge.builder("customer.replication.lag", this, follower -> Math.max(0, follower.head - follower.applied.position()))
+                .description("Writes the leader has made that are not applied here yet")
+                .register(registry);
+    }
+
+    public long getPosition() {
+        return applied.position();
+    }
+
+    /**
+     * Streams the log until disposed, reconnecting whenever the leader goes away.
+     * A leader sends heartbeats while idle, one that stays silent for three of them is assumed gone
+     * */
+    public Disposable follow() {
+        Duration silence = properties.getHeartbeat().multipliedBy(3);
+        return Flux.defer(() -> client.get()
+                        .uri(properties.getLeader() + "/customer/_replication?since={since}&epoch={epoch}",
+                                applied.position(), applied.epoch())
+                        .accept(LengthDelimited.SMILE_STREAM)
+                        .retrieve()
+                        .bodyToFlux(CustomerLogBatchDto.class)
+                        .timeout(silence))
+                .concatMap(this::apply)
+                .doOnError(e -> log.warn("Lost the replication log of {}: {}", properties.getLeader(), e.toString()))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, properties.getReconnectDelay()))
+                .repeatWhen(completed -> completed.delayElements(properties.getReconnectDelay()))
+                .subscribe();
+    }
+
+    /**
+     * Completes once the writes of the given leader run up to the given position have been applied
+     * */
+    public Mono<Void> await(long epoch, long position) {
+        if (applied.reached(epoch, position)) {
+            return Mono.empty();
+        }
+        return progress.asFlux()
+                .filter(applied -> applied.reached(epoch, position))
+                .next()
+                .then();
+    }
+
+    private Mono<Void> apply(CustomerLogBatchDto batch) {
+        head = batch.getHead();
+        if (batch.getCount() == 0) {
+            advance(batch);
+            return Mono.empty();
+        }
+
+        return customerService
+                .addCustomers(Flux.fromIterable(CompressedCustomers.decompress(batch.getCustomers(), batch.getCount())))
+                .doOnSuccess(result -> advance(batch))
+                .then();
+    }
+
+    /**
+     * Batches of a snapshot have no position, the follower only moves to the new epoch once all of it was applied
+     * */
+    private void advance(CustomerLogBatchDto batch) {
+        if (batch.getPosition() < 0) {
+            return;
+        }
+
+        applied = new Applied(batch.getEpoch(), batch.getPosition());
+        if (batch.getCount() > 0) {
+            delay.record(Math.max(0, System.currentTimeMillis() - batch.getTimestamp()), TimeUnit.MILLISECONDS);
+        }
+        progress.tryEmitNext(applied);
+    }
+
+    private record Applied(long epoch, long position) {
+        boolean reached(long epoch, long position) {
+            return this.epoch == epoch && this.position >= position;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.chetra.reactivespring.replication;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.service.CustomerService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Read-your-writes across a leader and its followers.
+ * Writes answered by the leader carry the position they reached in the replication log, enqueued ones are not in it yet and carry none.
+ * A follower holds back reads sent with that position until it has applied it, or answers 503 once that takes too long.
+ * Writes sent to a follower are redirected to the leader with 307 so the client repeats the same request there
+ * */
+@Component
+public class ReplicationFilter implements WebFilter {
+    public static final String POSITION_HEADER = "X-Customer-Position";
+
+    private final CustomerProperties.Replication properties;
+    private final CustomerService customerService;
+    private final CustomerFollower follower;
+
+    public ReplicationFilter(CustomerProperties properties, CustomerService customerService, CustomerFollower follower) {
+        this.properties = properties.getReplication();
+        this.customerService = customerService;
+        this.follower = follower;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        switch (properties.getRole()) {
+            case LEADER -> {
+                if (request.getMethod() == HttpMethod.POST) {
+                    response.beforeCommit(() -> {
+                        // 202 answers a write that is only queued, no position covers it yet
+                        String token = response.getStatusCode() == HttpStatus.ACCEPTED
+                                ? null
+                                : customerService.getReplicationToken();
+                        if (token != null) {
+                            response.getHeaders().set(POSITION_HEADER, token);
+                        }
+                        return Mono.empty();
+                    });
+                }
+                return chain.filter(exchange);
+            }
+            case FOLLOWER -> {
+                if (request.getMethod() == HttpMethod.POST && isWrite(request.getPath().value())) {
+                    return redirectToLeader(request, response);
+                }
+                String token = request.getHeaders().getFirst(POSITION_HEADER);
+                if (token != null && request.getMethod() == HttpMethod.GET) {
+                    return awaitPosition(token, exchange, chain);
+                }
+                return chain.filter(exchange);
+            }
+            default -> {
+                return chain.filter(exchange);
+            }
+        }
+    }
+
+    /**
+     * Only POST /customer and /customer/_bulk write, /customer/_mget is a read sent as POST
+     * */
+    private static boolean isWrite(String path) {
+        return path.equals("/customer") || path.equals("/customer/_bulk");
+    }
+
+    private Mono<Void> redirectToLeader(ServerHttpRequest request, ServerHttpResponse response) {
+        String query = request.getURI().getRawQuery();
+        response.setStatusCode(HttpStatus.TEMPORARY_REDIRECT);
+        response.getHeaders().setLocation(URI.create(properties.getLeader() + request.getURI().getRawPath()
+                + (query == null ? "" : "?" + query)));
+        return response.setComplete();
+    }
+
+    private Mono<Void> awaitPosition(String token, ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpResponse response = exchange.getResponse();
+        int separator = token.indexOf(':');
+        long epoch;
+        long position;
+        try {
+            epoch = Long.parseLong(token, 0, separator, 10);
+            position = Long.parseLong(token, separator + 1, token.length(), 10);
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return response.setComplete();
+        }
+
+        return follower.await(epoch, position)
+                .timeout(properties.getReadYourWritesTimeout())
+                .thenReturn(true)
+                .onErrorResume(TimeoutException.class, e -> Mono.just(false))
+                .flatMap(caughtUp -> {
+                    if (caughtUp) {
+                        return chain.filter(exchange);
+                    }
+                    response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                    response.getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+                    return response.setComplete();
+                });
+    }
+}
@@ -0,0 +1,25 @@
+package com.chetra.reactivespring.routers;
+
+import com.chetra.reactivespring.service.CachingCustomerService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+import static org.springframework.web.reactive.function.server.ServerResponse.ok;
+
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "customer.cache", name = "enabled", matchIfMissing = true)
+public class CacheRouterConfig {
+    private final CachingCustomerService cachingCustomerService;
+
+    @Bean
+    public RouterFunction<?> customerCacheRoute() {
+        return route(GET("/customer/_cache/stats"), request ->
+                ok().bodyValue(cachingCustomerService.stats()));
+    }
+}
@@ -1,40 +1,472 @@
 package com.chetra.reactivespring.routers;
 
+import com.chetra.reactivespring.admission.AdmissionControl;
+import com.chetra.reactivespring.codec.LengthDelimited;
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerQuery;
+import com.chetra.reactivespring.dto.BulkInsertDto;
 import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerLogBatchDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
+import com.chetra.reactivespring.dto.MultiGetDto;
 import com.chetra.reactivespring.service.CustomerService;
+import com.chetra.reactivespring.service.CustomerWriteQueue;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.reactive.function.server.HandlerFunction;
 import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import static com.chetra.reactivespring.admission.AdmissionControl.Priority.HIGH;
+import static com.chetra.reactivespring.admission.AdmissionControl.Priority.LOW;
+import static com.chetra.reactivespring.admission.AdmissionControl.Priority.NORMAL;
 import static org.springframework.web.reactive.function.server.RequestPredicates.*;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+import static org.springframework.web.reactive.function.server.ServerResponse.accepted;
+import static org.springframework.web.reactive.function.server.ServerResponse.badRequest;
 import static org.springframework.web.reactive.function.server.ServerResponse.created;
 import static org.springframework.web.reactive.function.server.ServerResponse.ok;
 
 @Configuration
 @RequiredArgsConstructor
 public class CustomRouterConfig {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final int MAX_IDS = 1_000;
+    private static final String MAX_ID_DIGITS = Integer.toString(Integer.MAX_VALUE);
+    private static final List<String> SCAN_PARAMS = List.of("minId", "maxId", "nameLike", "fields", "parallel", "ordered");
+    private static final List<MediaType> STREAMING_TYPES = List.of(MediaType.APPLICATION_NDJSON,
+            MediaType.TEXT_EVENT_STREAM, LengthDelimited.CBOR_STREAM, LengthDelimited.SMILE_STREAM);
+    private static final List<MediaType> BINARY_TYPES = List.of(MediaType.APPLICATION_CBOR,
+            new MediaType("application", "x-jackson-smile"));
+    private static final ParameterizedTypeReference<List<CustomerDto>> CUSTOMER_LIST =
+            new ParameterizedTypeReference<>() {
+            };
+
     private final CustomerService customerService;
+    private final AdmissionControl admissionControl;
+    private final CustomerWriteQueue writeQueue;
 
+    /**
+     * Every route but the long lived change and replication feeds goes through admission control,
+     * point lookups are kept over queries and single writes, which are kept over listings and bulk ingest.
+     * Routes are tried in order and every miss copies the request attributes,
+     * so lookups by id come first and only match numeric ids to stay clear of /search, /stats and /changes.
+     * The id is checked by a predicate rather than a regex so the route keeps its /customer/{id} metrics tag
+     * */
     @Bean
     public RouterFunction<?> customerRoute() {
-        return route(GET("/customer"), request ->
-            ok().body(customerService.get50Customers(), CustomerDto.class))
-                .andRoute(GET("/customer/{id}"), request ->
-                        ok().body(
-                                customerService.getCustomerById(Integer.valueOf(request.pathVariable("id"))),
-                                CustomerDto.class
+        return route(GET("/customer/{id}").and(CustomRouterConfig::numericId), admitted(HIGH, this::getCustomer))
+                .andRoute(GET("/customer").and(queryParam("name", name -> true)), admitted(NORMAL, request ->
+                customers(request, () -> customerService.getCustomersByName(request.queryParam("name").orElseThrow()))))
+                .andRoute(GET("/customer").and(queryParam("ids", ids -> true)), admitted(NORMAL, request ->
+                        getCustomers(request, request.queryParam("ids")
+                                .map(ids -> List.of(ids.split(",")))
+                                .orElseThrow())))
+                .andRoute(GET("/customer"), admitted(LOW, this::listCustomers))
+                .andRoute(GET("/customer/changes"), this::changes)
+                .andRoute(GET("/customer/_replication"), this::replication)
+                .andRoute(GET("/customer/search"), admitted(NORMAL, this::searchCustomers))
+                .andRoute(GET("/customer/stats"), admitted(NORMAL, request ->
+                        ok().body(customerService.getStats(), CustomerStatsDto.class)))
+                .andRoute(POST("/customer/_mget"), admitted(NORMAL, request -> request
+                        .bodyToMono(MultiGetDto.class)
+                        .flatMap(body -> getCustomers(request, body.getIds() == null
+                                ? List.of()
+                                : body.getIds().stream().map(String::valueOf).toList()))
+                        .switchIfEmpty(badRequest().build())))
+                .andRoute(POST("/customer/_bulk"), admitted(LOW, request ->
+                        negotiate(request, ok()).body(
+                                customerService.addCustomers(request.bodyToFlux(CustomerDto.class)),
+                                BulkInsertDto.class
                         )
-                )
-                .andRoute(POST("/customer"), request -> {
-                    Mono<CustomerDto> dtoMono = request.bodyToMono(CustomerDto.class);
-                    return created(
-                            URI.create("/customer/" + dtoMono.map(CustomerDto::getId)))
-                            .body(dtoMono, CustomerDto.class);
-                });
+                ))
+                .andRoute(POST("/customer"), admitted(NORMAL, this::addCustomer));
+    }
+
+    /**
+     * ?ack= picks when the write is answered: enqueued answers 202 once the write queue holds it,
+     * applied answers 201 once it is visible and flushed once the journal made it durable.
+     * Enqueued writes get 503 while too many are already waiting for room in the queue
+     * */
+    private Mono<ServerResponse> addCustomer(ServerRequest request) {
+        CustomerProperties.Write.Ack ack;
+        try {
+            ack = request.queryParam("ack")
+                    .map(value -> CustomerProperties.Write.Ack.valueOf(value.toUpperCase()))
+                    .orElse(writeQueue.getDefaultAck());
+        } catch (IllegalArgumentException e) {
+            return badRequest().bodyValue("ack must be one of enqueued, applied, flushed");
+        }
+
+        Mono<ServerResponse> response = ack == CustomerProperties.Write.Ack.ENQUEUED
+                ? writeQueue.enqueue(request.bodyToMono(CustomerDto.class))
+                        .flatMap(customer -> negotiate(request, customer.getId() == null
+                                ? accepted()
+                                : accepted().location(URI.create("/customer/" + customer.getId())))
+                                .bodyValue(customer))
+                : customerService.addCustomer(request.bodyToMono(CustomerDto.class), ack)
+                        .flatMap(customer -> negotiate(request, created(URI.create("/customer/" + customer.getId())))
+                                .bodyValue(customer));
+        return response
+                .onErrorResume(IllegalArgumentException.class, e -> badRequest().bodyValue(e.getMessage()))
+                .onErrorResume(RejectedExecutionException.class, e -> ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, Long.toString(writeQueue.getRetryAfter().toSeconds()))
+                        .build())
+                .switchIfEmpty(badRequest().build());
+    }
+
+    /**
+     * Only ASCII digits within the int range, anything else is no customer id and is left for the other routes.
+     * Character.isDigit would also let other scripts' digits through, which Integer.valueOf then rejects
+     * */
+    private static boolean numericId(ServerRequest request) {
+        String id = request.pathVariable("id");
+        if (id.isEmpty() || id.length() > MAX_ID_DIGITS.length()) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return id.length() < MAX_ID_DIGITS.length() || id.compareTo(MAX_ID_DIGITS) <= 0;
+    }
+
+    private HandlerFunction<ServerResponse> admitted(AdmissionControl.Priority priority,
+                                                     HandlerFunction<ServerResponse> handler) {
+        return admissionControl.filter(priority).apply(handler);
+    }
+
+    /**
+     * List customers in id order.
+     * Keyset pagination kicks in with ?after= and/or ?limit=,
+     * streaming media types get one customer per frame as soon as it is read
+     * */
+    private Mono<ServerResponse> listCustomers(ServerRequest request) {
+        for (String param : SCAN_PARAMS) {
+            if (request.queryParams().containsKey(param)) {
+                return scanCustomers(request);
+            }
+        }
+
+        var after = request.queryParam("after");
+        var limit = request.queryParam("limit");
+        if (after.isEmpty() && limit.isEmpty()) {
+            return customers(request, customerService::get50Customers);
+        }
+
+        int afterId;
+        int size;
+        try {
+            afterId = after.map(Integer::parseInt).orElse(0);
+            size = limit.map(Integer::parseInt).orElse(DEFAULT_PAGE_SIZE);
+        } catch (NumberFormatException e) {
+            afterId = 0;
+            size = -1;
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return badRequest().bodyValue("after must be an integer and limit between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        int pageAfter = afterId;
+        int pageSize = size;
+        return customers(request, () -> customerService.getCustomers(pageAfter, pageSize));
+    }
+
+    /**
+     * Filtered and projected listing, evaluated by the store so rows that do not match are never materialized.
+     * ?minId= and ?maxId= bound ids inclusively, ?nameLike= is a case insensitive glob with * and ?,
+     * ?fields= a comma separated subset of id,name.
+     * ?parallel=true splits the scan across cores, merged back in id order unless ?ordered=false.
+     * Without ?limit= every match is returned, a later scan continues with ?minId= past the last id seen
+     * */
+    private Mono<ServerResponse> scanCustomers(ServerRequest request) {
+        int minId;
+        int maxId;
+        int size;
+        try {
+            minId = request.queryParam("minId").map(Integer::parseInt).orElse(Integer.MIN_VALUE);
+            maxId = request.queryParam("maxId").map(Integer::parseInt).orElse(Integer.MAX_VALUE);
+            size = request.queryParam("limit").map(Integer::parseInt).orElse(Integer.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            return badRequest().bodyValue("minId, maxId and limit must be integers");
+        }
+        if (size < 1 || request.queryParam("limit").isPresent() && size > MAX_PAGE_SIZE) {
+            return badRequest().bodyValue("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        boolean withId = true;
+        boolean withName = true;
+        var fields = request.queryParam("fields");
+        if (fields.isPresent()) {
+            withId = false;
+            withName = false;
+            for (String field : fields.get().split(",")) {
+                switch (field.trim()) {
+                    case "id" -> withId = true;
+                    case "name" -> withName = true;
+                    default -> {
+                        return badRequest().bodyValue("fields must be a comma separated subset of id,name");
+                    }
+                }
+            }
+        }
+
+        CustomerQuery query = new CustomerQuery(minId, maxId,
+                request.queryParam("nameLike").orElse(null), withName);
+        boolean parallel = request.queryParam("parallel").map(Boolean::parseBoolean).orElse(false);
+        boolean ordered = request.queryParam("ordered").map(Boolean::parseBoolean).orElse(true);
+        boolean projectId = !withId;
+        return customers(request, () -> {
+            Flux<CustomerDto> scanned = customerService.scanCustomers(query, size, parallel, ordered);
+            // ids are kept through the scan for the ordered merge and only dropped on the way out
+            return projectId ? scanned.map(customer -> new CustomerDto(null, customer.getName())) : scanned;
+        });
+    }
+
+    /**
+     * A single customer, tagged with its own version
+     * */
+    private Mono<ServerResponse> getCustomer(ServerRequest request) {
+        Integer id = Integer.valueOf(request.pathVariable("id"));
+        MediaType type = binaryType(request);
+        return conditional(request, customerService.getVersion(id), type, response -> customerService.getCustomerById(id)
+                .flatMap(customer -> (type == null ? response : response.contentType(type)).bodyValue(customer))
+                .switchIfEmpty(Mono.defer(() -> notFound(request))));
+    }
+
+    /**
+     * Case insensitive search with ?prefix= and/or ?contains=, at most ?limit= customers.
+     * Without a prefix, contains needs to be long enough to be looked up in the trigram index
+     * */
+    private Mono<ServerResponse> searchCustomers(ServerRequest request) {
+        var prefix = request.queryParam("prefix").filter(value -> !value.isEmpty());
+        var contains = request.queryParam("contains").filter(value -> !value.isEmpty());
+        if (prefix.isEmpty() && contains.isEmpty()) {
+            return badRequest().bodyValue("prefix or contains is required");
+        }
+        if (prefix.isEmpty() && contains.get().length() < CustomerDao.MIN_CONTAINS) {
+            return badRequest().bodyValue("contains needs at least " + CustomerDao.MIN_CONTAINS + " characters without a prefix");
+        }
+
+        int limit;
+        try {
+            limit = request.queryParam("limit").map(Integer::parseInt).orElse(DEFAULT_PAGE_SIZE);
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return badRequest().bodyValue("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        int size = limit;
+        return customers(request, () -> customerService.searchCustomers(prefix.orElse(null), contains.orElse(null), size));
+    }
+
+    /**
+     * Multi-get by id, customers come back in the order asked for and unknown ids are left out
+     * */
+    private Mono<ServerResponse> getCustomers(ServerRequest request, List<String> ids) {
+        Set<Integer> distinct = new LinkedHashSet<>();
+        try {
+            for (String id : ids) {
+                distinct.add(Integer.valueOf(id.trim()));
+            }
+        } catch (NumberFormatException e) {
+            return badRequest().bodyValue("ids must be integers");
+        }
+        if (distinct.isEmpty() || distinct.size() > MAX_IDS) {
+            return badRequest().bodyValue("between 1 and " + MAX_IDS + " ids are required");
+        }
+
+        return customers(request, () -> customerService.getCustomersByIds(List.copyOf(distinct)));
+    }
+
+    /**
+     * Server-sent events of customer writes, the event id is the change sequence number.
+     * Reconnecting with Last-Event-ID or ?since= replays the changes missed in between,
+     * ?overflow= overrides the configured policy for a subscriber that falls behind
+     * */
+    private Mono<ServerResponse> changes(ServerRequest request) {
+        Long since;
+        CustomerProperties.Changes.Overflow overflow;
+        try {
+            since = request.queryParam("since")
+                    .or(() -> Optional.ofNullable(request.headers().firstHeader("Last-Event-ID")))
+                    .map(Long::valueOf)
+                    .orElse(null);
+            overflow = request.queryParam("overflow")
+                    .map(value -> CustomerProperties.Changes.Overflow.valueOf(value.toUpperCase().replace('-', '_')))
+                    .orElse(null);
+        } catch (IllegalArgumentException e) {
+            return badRequest().bodyValue("since must be a sequence number and overflow one of drop-oldest, latest, disconnect");
+        }
+
+        return ok().contentType(MediaType.TEXT_EVENT_STREAM).body(customerService
+                .getChanges(since, overflow)
+                .map(change -> ServerSentEvent.builder(change.getCustomer())
+                        .id(Long.toString(change.getSequence()))
+                        .event("customer")
+                        .build()), ServerSentEvent.class);
+    }
+
+    /**
+     * Replication log for followers as length-delimited Smile frames, only served by a leader.
+     * ?since= and ?epoch= are the position a follower applied and the leader run it came from,
+     * the log resumes from there or starts over with a snapshot
+     * */
+    private Mono<ServerResponse> replication(ServerRequest request) {
+        if (customerService.getReplicationToken() == null) {
+            return ServerResponse.notFound().build();
+        }
+
+        long since;
+        long epoch;
+        try {
+            since = request.queryParam("since").map(Long::parseLong).orElse(0L);
+            epoch = request.queryParam("epoch").map(Long::parseLong).orElse(0L);
+        } catch (NumberFormatException e) {
+            return badRequest().bodyValue("since and epoch must be numbers");
+        }
+
+        return ok().contentType(LengthDelimited.SMILE_STREAM)
+                .body(customerService.getReplicationLog(since, epoch), CustomerLogBatchDto.class);
+    }
+
+    /**
+     * Lists are tagged with the store generation, any write changes the tag of every list.
+     * Streaming types get one customer per frame as soon as it is read,
+     * binary types encode a single array since their Jackson encoders cannot stream,
+     * anything else gets a JSON array
+     * */
+    private Mono<ServerResponse> customers(ServerRequest request, Supplier<Flux<CustomerDto>> customers) {
+        MediaType type = listType(request);
+        return conditional(request, customerService.getGeneration(), type, response -> {
+            if (type == null) {
+                return response.body(customers.get(), CustomerDto.class);
+            }
+            if (STREAMING_TYPES.contains(type)) {
+                return response.contentType(type).body(customers.get(), CustomerDto.class);
+            }
+            return response.contentType(type).body(customers.get().collectList(), CUSTOMER_LIST);
+        });
+    }
+
+    /**
+     * Strong ETag and Last-Modified from a version read before anything is loaded,
+     * a matching If-None-Match or If-Modified-Since is answered with 304 without loading or encoding the body.
+     * The tag differs per negotiated media type since each is encoded to different bytes.
+     * Versions only move once a write is visible in the store and its cached copy was dropped,
+     * so the body loaded after reading the version is never older than its tag
+     * */
+    private Mono<ServerResponse> conditional(ServerRequest request, long version, MediaType type,
+                                             Function<ServerResponse.BodyBuilder, Mono<ServerResponse>> response) {
+        String etag = "\"" + Long.toString(version, 36) + (type == null ? "" : "-" + type.getSubtype()) + "\"";
+        Instant lastModified = Instant.EPOCH.plus(version, ChronoUnit.MICROS);
+        if (request.method() != HttpMethod.GET && request.method() != HttpMethod.HEAD) {
+            // preconditions on POST /_mget would turn a match into 412 rather than 304
+            return response.apply(ok().eTag(etag).lastModified(lastModified).varyBy(HttpHeaders.ACCEPT));
+        }
+        // the check already puts both headers on the response, setting them on the builder as well
+        // would have the response parse Last-Modified back and check again while writing
+        return request.checkNotModified(lastModified, etag)
+                .switchIfEmpty(Mono.defer(() -> response.apply(ok().varyBy(HttpHeaders.ACCEPT))));
+    }
+
+    /**
+     * Answer a conditional lookup that found nothing, dropping the validators the precondition check already set
+     * */
+    private static Mono<ServerResponse> notFound(ServerRequest request) {
+        HttpHeaders headers = request.exchange().getResponse().getHeaders();
+        headers.remove(HttpHeaders.ETAG);
+        headers.remove(HttpHeaders.LAST_MODIFIED);
+        return ServerResponse.notFound().build();
+    }
+
+    /**
+     * Functional responses pick their writer by content type only, so binary types asked for are set up front
+     * */
+    private static ServerResponse.BodyBuilder negotiate(ServerRequest request, ServerResponse.BodyBuilder response) {
+        MediaType type = binaryType(request);
+        return type == null ? response : response.contentType(type);
+    }
+
+    /**
+     * The first binary type in order of preference, null once JSON or a wildcard covering it is preferred
+     * */
+    private static MediaType binaryType(ServerRequest request) {
+        for (MediaType accepted : preferred(request)) {
+            MediaType binary = match(accepted, BINARY_TYPES);
+            if (binary != null) {
+                return binary;
+            }
+            if (accepted.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static MediaType listType(ServerRequest request) {
+        for (MediaType accepted : preferred(request)) {
+            MediaType type = Optional.ofNullable(match(accepted, STREAMING_TYPES))
+                    .orElseGet(() -> match(accepted, BINARY_TYPES));
+            if (type != null) {
+                return type;
+            }
+            if (accepted.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Accepted types by quality then specificity, those with q=0 are not acceptable at all
+     * */
+    private static List<MediaType> preferred(ServerRequest request) {
+        List<MediaType> accepted = request.headers().accept();
+        if (accepted.size() < 2) {
+            return accepted;
+        }
+        List<MediaType> sorted = new ArrayList<>(accepted);
+        sorted.removeIf(type -> type.getQualityValue() == 0);
+        MimeTypeUtils.sortBySpecificity(sorted);
+        return sorted;
+    }
+
+    private static MediaType match(MediaType accepted, List<MediaType> types) {
+        for (MediaType type : types) {
+            if (type.equalsTypeAndSubtype(accepted)) {
+                return type;
+            }
+        }
+        return null;
     }
 }
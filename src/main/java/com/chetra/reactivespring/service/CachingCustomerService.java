@@ -0,0 +1,165 @@
+package com.chetra.reactivespring.service;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerQuery;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CacheStatsDto;
+import com.chetra.reactivespring.dto.CustomerChangeDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerLogBatchDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
+import com.chetra.reactivespring.metrics.CustomerMetrics;
+import com.chetra.reactivespring.shard.ShardRing;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Read-through cache in front of {@link CustomerServiceImpl}.
+ * Lookups by id are cached with size bounded W-TinyLFU eviction and a TTL,
+ * concurrent misses for the same id share a single load from the store.
+ * The store drops a cached customer when it is written, before the write's version can be read.
+ * When sharded only customers this member owns are cached, others change without it hearing about it
+ * */
+@Primary
+@Service
+@ConditionalOnProperty(prefix = "customer.cache", name = "enabled", matchIfMissing = true)
+public class CachingCustomerService implements CustomerService {
+    private final CustomerService delegate;
+    private final AsyncCache<Integer, CustomerDto> cache;
+    private final ShardRing ring;
+
+    public CachingCustomerService(CustomerServiceImpl delegate, CustomerProperties properties, CustomerMetrics metrics,
+                                  ShardRing shardRing) {
+        this.delegate = delegate;
+        this.ring = shardRing;
+        this.cache = CaffeineCacheMetrics.monitor(metrics.getRegistry(), Caffeine.newBuilder()
+                .maximumSize(properties.getCache().getMaximumSize())
+                .expireAfterWrite(properties.getCache().getTtl())
+                .recordStats()
+                .<Integer, CustomerDto>buildAsync(), "customers");
+        // dropped before the version moves, a reader who saw the new version cannot be served the old customer
+        delegate.onWrite(id -> cache.synchronous().invalidate(id));
+    }
+
+    @Override
+    public Flux<CustomerDto> get50Customers() {
+        return delegate.get50Customers();
+    }
+
+    @Override
+    public Flux<CustomerDto> getCustomers(int after, int limit) {
+        return delegate.getCustomers(after, limit);
+    }
+
+    /**
+     * Missing customers complete the shared load with null,
+     * Caffeine drops such entries so they are never cached
+     * */
+    @Override
+    public Mono<CustomerDto> getCustomerById(Integer id) {
+        if (id == null) {
+            return Mono.empty();
+        }
+        if (!ring.isLocal(id)) {
+            return delegate.getCustomerById(id);
+        }
+
+        // suppress cancel, the load is shared with every other caller waiting on the same id
+        return Mono.fromFuture(() -> cache.get(id, (key, executor) ->
+                delegate.getCustomerById(key).toFuture()), true);
+    }
+
+    /**
+     * Cached customers are served directly, all misses are loaded together with one multi-get
+     * */
+    @Override
+    public Flux<CustomerDto> getCustomersByIds(List<Integer> ids) {
+        if (ring.isEnabled()) {
+            // loads run detached from the request, a forwarded multi-get has to reach the delegate within it
+            return delegate.getCustomersByIds(ids);
+        }
+        return Mono.fromFuture(() -> cache.getAll(ids, (missing, executor) -> delegate
+                        .getCustomersByIds(List.copyOf(missing))
+                        .collectMap(CustomerDto::getId)
+                        .toFuture()), true)
+                .flatMapMany(found -> Flux.fromIterable(ids).mapNotNull(found::get));
+    }
+
+    @Override
+    public Flux<CustomerDto> getCustomersByName(String name) {
+        return delegate.getCustomersByName(name);
+    }
+
+    @Override
+    public Flux<CustomerDto> searchCustomers(String prefix, String contains, int limit) {
+        return delegate.searchCustomers(prefix, contains, limit);
+    }
+
+    @Override
+    public Flux<CustomerDto> scanCustomers(CustomerQuery query, int limit, boolean parallel, boolean ordered) {
+        return delegate.scanCustomers(query, limit, parallel, ordered);
+    }
+
+    /**
+     * Writes are not cached here, the store drops the cached customer as each write becomes visible.
+     * Caching the written customer once the write completes could put it back over a newer write
+     * */
+    @Override
+    public Mono<CustomerDto> addCustomer(Mono<CustomerDto> customerDto, CustomerProperties.Write.Ack ack) {
+        return delegate.addCustomer(customerDto, ack);
+    }
+
+    @Override
+    public Mono<BulkInsertDto> addCustomers(Flux<CustomerDto> customerDtos) {
+        return delegate.addCustomers(customerDtos);
+    }
+
+    @Override
+    public long getVersion(int id) {
+        return delegate.getVersion(id);
+    }
+
+    @Override
+    public long getGeneration() {
+        return delegate.getGeneration();
+    }
+
+    @Override
+    public Mono<CustomerStatsDto> getStats() {
+        return delegate.getStats();
+    }
+
+    @Override
+    public Flux<CustomerLogBatchDto> getReplicationLog(long since, long epoch) {
+        return delegate.getReplicationLog(since, epoch);
+    }
+
+    @Override
+    public String getReplicationToken() {
+        return delegate.getReplicationToken();
+    }
+
+    @Override
+    public Flux<CustomerChangeDto> getChanges(Long since, CustomerProperties.Changes.Overflow overflow) {
+        return delegate.getChanges(since, overflow);
+    }
+
+    public CacheStatsDto stats() {
+        CacheStats stats = cache.synchronous().stats();
+        return new CacheStatsDto(
+                cache.synchronous().estimatedSize(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount()
+        );
+    }
+}
@@ -0,0 +1,111 @@
+package com.chetra.reactivespring.service;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent lookups by id into batches.
+ * The first lookup of a batch opens a window, every lookup arriving within it joins the batch,
+ * reaching the max batch size dispatches right away.
+ * Each batch is resolved with a single multi-get, ids requested more than once are loaded once
+ * */
+class CustomerBatchLoader {
+    private final Function<List<Integer>, Flux<CustomerDto>> batchLoad;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Scheduler timer = Schedulers.parallel();
+    private final DistributionSummary batchSizes;
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    CustomerBatchLoader(Function<List<Integer>, Flux<CustomerDto>> batchLoad, Duration window, int maxBatchSize,
+                        MeterRegistry registry) {
+        this.batchLoad = batchLoad;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batchSizes = DistributionSummary.builder("customer.service.lookup.batch.size")
+                .description("Number of lookups resolved by one multi-get")
+                .register(registry);
+    }
+
+    Mono<CustomerDto> load(Integer id) {
+        return Mono.defer(() -> {
+            Sinks.One<CustomerDto> sink = Sinks.one();
+            pending.add(new Pending(id, sink));
+            if (queued.incrementAndGet() >= maxBatchSize) {
+                dispatch();
+            } else {
+                schedule();
+            }
+            return sink.asMono();
+        });
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            timer.schedule(this::dispatchScheduled, window.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Lookups queued after the flag is cleared open a window of their own
+     * */
+    private void dispatchScheduled() {
+        scheduled.set(false);
+        dispatch();
+        if (!pending.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void dispatch() {
+        Map<Integer, List<Sinks.One<CustomerDto>>> batch = new LinkedHashMap<>();
+        int taken = 0;
+        Pending next;
+        while (taken < maxBatchSize && (next = pending.poll()) != null) {
+            batch.computeIfAbsent(next.id(), id -> new ArrayList<>(1)).add(next.sink());
+            taken++;
+        }
+        if (taken == 0) {
+            return;
+        }
+        queued.addAndGet(-taken);
+        batchSizes.record(taken);
+
+        batchLoad.apply(new ArrayList<>(batch.keySet()))
+                .collectMap(CustomerDto::getId)
+                .subscribe(found -> batch.forEach((id, sinks) -> {
+                    CustomerDto customer = found.get(id);
+                    for (Sinks.One<CustomerDto> sink : sinks) {
+                        if (customer == null) {
+                            sink.tryEmitEmpty();
+                        } else {
+                            sink.tryEmitValue(customer);
+                        }
+                    }
+                }), error -> batch.values().forEach(sinks ->
+                        sinks.forEach(sink -> sink.tryEmitError(error))));
+    }
+
+    private record Pending(Integer id, Sinks.One<CustomerDto> sink) {
+    }
+}
@@ -0,0 +1,124 @@
+package com.chetra.reactivespring.service;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.CustomerChangeDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multicast feed of customer writes, published by the store while it holds the id written
+ * so writes to an id are numbered in the order they were applied.
+ * One best-effort sink fans changes out to every subscriber without waiting on any of them,
+ * each subscriber drains its own bounded buffer and applies its overflow policy when it falls behind.
+ * Recent changes are kept in a ring so subscribers resuming from a sequence number only get what they missed
+ * */
+class CustomerChangeFeed {
+    private final Sinks.Many<CustomerChangeDto> sink = Sinks.many().multicast().directBestEffort();
+    private final Deque<CustomerChangeDto> history = new ArrayDeque<>();
+    private final Queue<CustomerChangeDto> emitting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final CustomerProperties.Changes properties;
+    private final Counter dropped;
+    private long sequence;
+
+    CustomerChangeFeed(CustomerProperties.Changes properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.dropped = Counter.builder("customer.changes.dropped")
+                .description("Changes discarded or ending a stream because a subscriber fell behind")
+                .register(registry);
+        Gauge.builder("customer.changes.subscribers", sink, Sinks.Many::currentSubscriberCount)
+                .register(registry);
+    }
+
+    /**
+     * Sequence numbers and the history move together under the lock,
+     * changes are handed to the sink in sequence order once it is released
+     * */
+    void publish(CustomerDto customer) {
+        synchronized (this) {
+            CustomerChangeDto change = new CustomerChangeDto(++sequence, customer);
+            if (history.size() == properties.getHistorySize()) {
+                history.removeFirst();
+            }
+            if (properties.getHistorySize() > 0) {
+                history.addLast(change);
+            }
+            emitting.add(change);
+        }
+        emit();
+    }
+
+    /**
+     * Changes after the given sequence number that are still in the history, then live changes.
+     * A null sequence starts with live changes only.
+     * Changes numbered before subscribing but not emitted yet are skipped live, the history already had them
+     * */
+    Flux<CustomerChangeDto> changes(Long since, CustomerProperties.Changes.Overflow overflow) {
+        Flux<CustomerChangeDto> changes = Flux.create(emitter -> {
+            synchronized (this) {
+                for (CustomerChangeDto change : missed(since)) {
+                    emitter.next(change);
+                }
+                long from = sequence;
+                Disposable live = sink.asFlux()
+                        .filter(change -> change.getSequence() > from)
+                        .subscribe(emitter::next, emitter::error, emitter::complete);
+                emitter.onDispose(live);
+            }
+        }, FluxSink.OverflowStrategy.IGNORE);
+
+        int bufferSize = properties.getBufferSize();
+        return switch (overflow == null ? properties.getOverflow() : overflow) {
+            case DROP_OLDEST -> changes.onBackpressureBuffer(bufferSize, change -> dropped.increment(),
+                    BufferOverflowStrategy.DROP_OLDEST);
+            case LATEST -> changes.onBackpressureLatest();
+            case DISCONNECT -> changes.onBackpressureBuffer(bufferSize, change -> dropped.increment(),
+                    BufferOverflowStrategy.ERROR);
+        };
+    }
+
+    /**
+     * Serialized by the work in progress count, whoever finds it at zero emits on behalf of everyone publishing meanwhile
+     * */
+    private void emit() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            for (CustomerChangeDto change; (change = emitting.poll()) != null; ) {
+                sink.tryEmitNext(change);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private Deque<CustomerChangeDto> missed(Long since) {
+        Deque<CustomerChangeDto> missed = new ArrayDeque<>();
+        if (since == null) {
+            return missed;
+        }
+        for (var changes = history.descendingIterator(); changes.hasNext(); ) {
+            CustomerChangeDto change = changes.next();
+            if (change.getSequence() <= since) {
+                break;
+            }
+            missed.addFirst(change);
+        }
+        return missed;
+    }
+}
@@ -1,11 +1,60 @@
 package com.chetra.reactivespring.service;
 
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerQuery;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerChangeDto;
 import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerLogBatchDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface CustomerService {
     Flux<CustomerDto> get50Customers();
+    Flux<CustomerDto> getCustomers(int after, int limit);
     Mono<CustomerDto> getCustomerById(Integer id);
-    Mono<CustomerDto> addCustomer(Mono<CustomerDto> customerDto);
+    Flux<CustomerDto> getCustomersByIds(List<Integer> ids);
+    Flux<CustomerDto> getCustomersByName(String name);
+    Flux<CustomerDto> searchCustomers(String prefix, String contains, int limit);
+    Flux<CustomerDto> scanCustomers(CustomerQuery query, int limit, boolean parallel, boolean ordered);
+    default Mono<CustomerDto> addCustomer(Mono<CustomerDto> customerDto) {
+        return addCustomer(customerDto, CustomerProperties.Write.Ack.FLUSHED);
+    }
+
+    /**
+     * Completes once the customer is applied, or flushed to the journal too.
+     * Enqueued writes are held by the {@link CustomerWriteQueue} in front of the service, here they count as applied
+     * */
+    Mono<CustomerDto> addCustomer(Mono<CustomerDto> customerDto, CustomerProperties.Write.Ack ack);
+    Mono<BulkInsertDto> addCustomers(Flux<CustomerDto> customerDtos);
+    /**
+     * Microseconds since the epoch at the last write to the customer, cheap enough to check before any load
+     * */
+    long getVersion(int id);
+
+    /**
+     * Microseconds since the epoch at the last write to any customer
+     * */
+    long getGeneration();
+
+    /**
+     * Aggregates of every customer, kept up to date by writes rather than computed on request
+     * */
+    Mono<CustomerStatsDto> getStats();
+
+    /**
+     * The replication log streamed to followers, see {@link CustomerDao#replicate}
+     * */
+    Flux<CustomerLogBatchDto> getReplicationLog(long since, long epoch);
+
+    /**
+     * Epoch and position of the last write in the replication log as epoch:position, null unless this instance leads
+     * */
+    String getReplicationToken();
+
+    Flux<CustomerChangeDto> getChanges(Long since, CustomerProperties.Changes.Overflow overflow);
 }
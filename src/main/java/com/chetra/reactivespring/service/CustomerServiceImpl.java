@@ -1,29 +1,308 @@
 package com.chetra.reactivespring.service;
 
+import com.chetra.reactivespring.config.CustomerProperties;
 import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerQuery;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerChangeDto;
 import com.chetra.reactivespring.dto.CustomerDto;
-import lombok.RequiredArgsConstructor;
+import com.chetra.reactivespring.dto.CustomerLogBatchDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
+import com.chetra.reactivespring.metrics.CustomerMetrics;
+import com.chetra.reactivespring.shard.ShardClient;
+import com.chetra.reactivespring.shard.ShardRing;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-@RequiredArgsConstructor
+import java.net.URI;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * Customer service backed by {@link CustomerDao}.
+ * With customer.lookup.coalesce enabled, concurrent lookups by id are gathered
+ * by a {@link CustomerBatchLoader} and resolved with one multi-get.
+ * With customer.shard.enabled, customers owned by other members of the {@link ShardRing} are read and written
+ * through the {@link ShardClient}, listings scatter to every member and merge what comes back.
+ * Calls forwarded by another member are always answered locally
+ * */
 @Service
 public class CustomerServiceImpl implements CustomerService {
+    private static final String METRICS_LAYER = "customer.service";
+    private static final Comparator<CustomerDto> BY_ID = Comparator.comparing(CustomerDto::getId);
+    private static final Comparator<CustomerDto> BY_NAME = Comparator
+            .comparing((CustomerDto customer) -> customer.getName().toLowerCase(Locale.ROOT))
+            .thenComparing(BY_ID);
+
     private final CustomerDao customerDao;
+    private final CustomerProperties properties;
+    private final ShardRing ring;
+    private final ShardClient shardClient;
+    private final CustomerMetrics.Operation listMetrics;
+    private final CustomerMetrics.Operation pageMetrics;
+    private final CustomerMetrics.Operation getByIdMetrics;
+    private final CustomerMetrics.Operation getByIdsMetrics;
+    private final CustomerMetrics.Operation getByNameMetrics;
+    private final CustomerMetrics.Operation searchMetrics;
+    private final CustomerMetrics.Operation scanMetrics;
+    private final CustomerMetrics.Operation addMetrics;
+    private final CustomerMetrics.Operation addBulkMetrics;
+    private final CustomerBatchLoader batchLoader;
+    private final CustomerChangeFeed changeFeed;
+
+    public CustomerServiceImpl(CustomerDao customerDao, CustomerProperties properties, CustomerMetrics metrics,
+                               ShardRing shardRing, ShardClient shardClient) {
+        this.customerDao = customerDao;
+        this.properties = properties;
+        this.ring = shardRing;
+        this.shardClient = shardClient;
+        this.listMetrics = metrics.operation(METRICS_LAYER, "get50Customers");
+        this.pageMetrics = metrics.operation(METRICS_LAYER, "getCustomers");
+        this.getByIdMetrics = metrics.operation(METRICS_LAYER, "getCustomerById");
+        this.getByIdsMetrics = metrics.operation(METRICS_LAYER, "getCustomersByIds");
+        this.getByNameMetrics = metrics.operation(METRICS_LAYER, "getCustomersByName");
+        this.searchMetrics = metrics.operation(METRICS_LAYER, "searchCustomers");
+        this.scanMetrics = metrics.operation(METRICS_LAYER, "scanCustomers");
+        this.addMetrics = metrics.operation(METRICS_LAYER, "addCustomer");
+        this.addBulkMetrics = metrics.operation(METRICS_LAYER, "addCustomers");
+
+        CustomerProperties.Lookup lookup = properties.getLookup();
+        this.batchLoader = lookup.isCoalesce()
+                ? new CustomerBatchLoader(customerDao::getCustomersByIds, lookup.getWindow(), lookup.getMaxBatchSize(),
+                        metrics.getRegistry())
+                : null;
+        this.changeFeed = new CustomerChangeFeed(properties.getChanges(), metrics.getRegistry());
+        customerDao.onChange(changeFeed::publish);
+    }
 
     @Override
     public Flux<CustomerDto> get50Customers() {
-        return customerDao.get50Customers();
+        return listMetrics.timed(scatter(customerDao.get50Customers(), uri -> uri.path("/customer").build(), BY_ID));
+    }
+
+    @Override
+    public Flux<CustomerDto> getCustomers(int after, int limit) {
+        return pageMetrics.timed(scatter(customerDao.getCustomers(after, limit), uri -> uri.path("/customer")
+                .queryParam("after", after)
+                .queryParam("limit", limit)
+                .build(), BY_ID)
+                .take(limit, true));
     }
 
     @Override
     public Mono<CustomerDto> getCustomerById(Integer id) {
-        return customerDao.getCustomerById(id);
+        if (id != null && !ring.isLocal(id)) {
+            return getByIdMetrics.timed(Mono.deferContextual(context -> ShardClient.isForwarded(context)
+                    ? customerDao.getCustomerById(id)
+                    : shardClient.getCustomerById(ring.owner(id), id)));
+        }
+        if (batchLoader == null || id == null) {
+            return getByIdMetrics.timed(customerDao.getCustomerById(id));
+        }
+        return getByIdMetrics.timed(batchLoader.load(id));
+    }
+
+    /**
+     * Sharded, ids are looked up with one multi-get per owner and put back into the order they were asked in
+     * */
+    @Override
+    public Flux<CustomerDto> getCustomersByIds(List<Integer> ids) {
+        if (!ring.isEnabled()) {
+            return getByIdsMetrics.timed(customerDao.getCustomersByIds(ids));
+        }
+        return getByIdsMetrics.timed(Flux.deferContextual(context -> {
+            if (ShardClient.isForwarded(context)) {
+                return customerDao.getCustomersByIds(ids);
+            }
+            Map<String, List<Integer>> byOwner = new HashMap<>();
+            for (Integer id : ids) {
+                if (id != null) {
+                    byOwner.computeIfAbsent(ring.owner(id), owner -> new ArrayList<>()).add(id);
+                }
+            }
+            return Flux.fromIterable(byOwner.entrySet())
+                    .flatMap(owned -> owned.getKey().equals(ring.self())
+                            ? customerDao.getCustomersByIds(owned.getValue())
+                            : shardClient.getCustomersByIds(owned.getKey(), owned.getValue()))
+                    .collectMap(CustomerDto::getId)
+                    .flatMapIterable(found -> ids.stream().filter(Objects::nonNull).map(found::get).filter(Objects::nonNull).toList());
+        }));
+    }
+
+    @Override
+    public Flux<CustomerDto> getCustomersByName(String name) {
+        return getByNameMetrics.timed(scatter(customerDao.getCustomersByName(name), uri -> uri.path("/customer")
+                .queryParam("name", "{name}")
+                .build(name), null));
+    }
+
+    /**
+     * Sharded, prefix matches are merged by name like a single store returns them, substring matches as they arrive
+     * */
+    @Override
+    public Flux<CustomerDto> searchCustomers(String prefix, String contains, int limit) {
+        return searchMetrics.timed(scatter(customerDao.searchCustomers(prefix, contains, limit), uri -> uri.path("/customer/search")
+                .queryParamIfPresent("prefix", Optional.ofNullable(prefix).map(value -> "{prefix}"))
+                .queryParamIfPresent("contains", Optional.ofNullable(contains).map(value -> "{contains}"))
+                .queryParam("limit", limit)
+                .build(Map.of("prefix", String.valueOf(prefix), "contains", String.valueOf(contains))),
+                prefix != null ? BY_NAME : null)
+                .take(limit, true));
+    }
+
+    @Override
+    public Flux<CustomerDto> scanCustomers(CustomerQuery query, int limit, boolean parallel, boolean ordered) {
+        return scanMetrics.timed(scatter(customerDao.scanCustomers(query, limit, parallel, ordered), uri -> uri.path("/customer")
+                .queryParam("minId", query.minId())
+                .queryParam("maxId", query.maxId())
+                .queryParamIfPresent("nameLike", Optional.ofNullable(query.nameLike()).map(value -> "{nameLike}"))
+                .queryParam("fields", query.withName() ? "id,name" : "id")
+                .queryParam("parallel", parallel)
+                .queryParam("ordered", ordered)
+                .queryParamIfPresent("limit", Optional.of(limit).filter(value -> value != Integer.MAX_VALUE))
+                .build(Map.of("nameLike", String.valueOf(query.nameLike()))), ordered ? BY_ID : null)
+                .take(limit, true));
+    }
+
+    /**
+     * Sharded, customers with an id owned by another member are written by that member,
+     * customers without one are inserted here under an id this member owns
+     * */
+    @Override
+    public Mono<CustomerDto> addCustomer(Mono<CustomerDto> customerDto, CustomerProperties.Write.Ack ack) {
+        boolean durable = ack == CustomerProperties.Write.Ack.FLUSHED;
+        if (!ring.isEnabled()) {
+            return addMetrics.timed(customerDao.postCustomer(customerDto, durable));
+        }
+        return addMetrics.timed(Mono.deferContextual(context -> customerDto.flatMap(customer ->
+                customer.getId() == null || customer.getName() == null || ring.isLocal(customer.getId())
+                        || ShardClient.isForwarded(context)
+                        ? customerDao.postCustomer(Mono.just(customer), durable)
+                        : shardClient.addCustomer(ring.owner(customer.getId()), customer, ack))));
+    }
+
+    /**
+     * Group incoming customers into size and time bounded batches,
+     * each batch is committed to the store in a single call
+     * */
+    @Override
+    public Mono<BulkInsertDto> addCustomers(Flux<CustomerDto> customerDtos) {
+        if (!ring.isEnabled()) {
+            return addBulkMetrics.timed(saveLocally(customerDtos));
+        }
+        // sharded, each owner receives its part of the stream as one bulk request of its own
+        return addBulkMetrics.timed(Mono.deferContextual(context -> ShardClient.isForwarded(context)
+                ? saveLocally(customerDtos)
+                : customerDtos
+                        .groupBy(customer -> customer.getId() == null ? ring.self() : ring.owner(customer.getId()))
+                        .flatMap(owned -> owned.key().equals(ring.self())
+                                ? saveLocally(owned)
+                                : shardClient.addCustomers(owned.key(), owned))
+                        .reduce(new BulkInsertDto(0, 0), BulkInsertDto::plus)));
+    }
+
+    /**
+     * Customers owned by other members change without this one knowing,
+     * so they and sharded listings are stamped with the current time and never answered with 304
+     * */
+    @Override
+    public long getVersion(int id) {
+        return ring.isLocal(id) ? customerDao.getVersion(id) : now();
+    }
+
+    /**
+     * See {@link CustomerDao#onWrite}, only local writes are reported
+     * */
+    public void onWrite(IntConsumer listener) {
+        customerDao.onWrite(listener);
+    }
+
+    @Override
+    public long getGeneration() {
+        return ring.isEnabled() ? now() : customerDao.getGeneration();
+    }
+
+    /**
+     * Sharded stats add up the aggregates of every member
+     * */
+    @Override
+    public Mono<CustomerStatsDto> getStats() {
+        Mono<CustomerStatsDto> local = Mono.fromSupplier(customerDao::getStats);
+        if (!ring.isEnabled()) {
+            return local;
+        }
+        return Mono.deferContextual(context -> {
+            if (ShardClient.isForwarded(context)) {
+                return local;
+            }
+            return Flux.fromIterable(ring.remotes())
+                    .flatMap(shardClient::getStats)
+                    .mergeWith(local)
+                    .reduce(CustomerStatsDto::plus);
+        });
+    }
+
+    @Override
+    public Flux<CustomerLogBatchDto> getReplicationLog(long since, long epoch) {
+        return customerDao.replicate(since, epoch);
+    }
+
+    @Override
+    public String getReplicationToken() {
+        long position = customerDao.getReplicationPosition();
+        return position < 0 ? null : customerDao.getReplicationEpoch() + ":" + position;
+    }
+
+    private Mono<BulkInsertDto> saveLocally(Flux<CustomerDto> customerDtos) {
+        CustomerProperties.Bulk bulk = properties.getBulk();
+        return customerDtos
+                .bufferTimeout(bulk.getBatchSize(), bulk.getBatchWindow())
+                .concatMap(customerDao::saveCustomers)
+                .reduce(new BulkInsertDto(0, 0), BulkInsertDto::plus);
+    }
+
+    /**
+     * This member's customers merged with those of every other member,
+     * in the order of the comparator each of them already returns customers in, or as they arrive without one
+     * */
+    @SuppressWarnings("unchecked")
+    private Flux<CustomerDto> scatter(Flux<CustomerDto> local, Function<UriBuilder, URI> uri, Comparator<CustomerDto> order) {
+        if (!ring.isEnabled()) {
+            return local;
+        }
+        return Flux.deferContextual(context -> {
+            if (ShardClient.isForwarded(context)) {
+                return local;
+            }
+            List<Flux<CustomerDto>> members = new ArrayList<>(ring.remotes().size() + 1);
+            members.add(local);
+            for (String member : ring.remotes()) {
+                members.add(shardClient.list(member, uri));
+            }
+            return order == null
+                    ? Flux.merge(members)
+                    : Flux.mergeComparing(order, members.toArray(Flux[]::new));
+        });
+    }
+
+    private static long now() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
     }
 
     @Override
-    public Mono<CustomerDto> addCustomer(Mono<CustomerDto> customerDto) {
-        return null;
+    public Flux<CustomerChangeDto> getChanges(Long since, CustomerProperties.Changes.Overflow overflow) {
+        return changeFeed.changes(since, overflow);
     }
 }
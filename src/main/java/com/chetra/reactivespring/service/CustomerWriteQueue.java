@@ -0,0 +1,184 @@
+package com.chetra.reactivespring.service;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.metrics.CustomerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind for POST /customer?ack=enqueued. Writes are acknowledged once they are in a bounded queue,
+ * a background writer takes them off in batches and commits each with one bulk write of the {@link CustomerService}
+ * on a thread of its own, so acknowledging never waits on the store. Batches are at most customer.bulk.batch-size,
+ * the store then commits each in one call and the journal flushes it together.
+ * The cache is invalidated and the change feed published by the store like for any other write.
+ * A write arriving at a full queue is acknowledged once the writer took enough of the queue to make room for it,
+ * clients slow down to the pace of the writer rather than being turned away,
+ * until so many are waiting that further writes fail with a {@link RejectedExecutionException}.
+ * Only one batch is applied at a time, writes queued meanwhile make up the next one.
+ * Queued writes are lost if the process dies before they are applied, on shutdown the writer drains the queue first
+ * */
+@Slf4j
+@Component
+public class CustomerWriteQueue implements AutoCloseable {
+    private static final String METRICS_LAYER = "customer.write.queue";
+
+    private final CustomerProperties.Write properties;
+    private final CustomerService customerService;
+    private final BlockingQueue<CustomerDto> queue;
+    private final Queue<Waiting> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final Scheduler writer = Schedulers.newSingle("customer-write-queue");
+    private final int batchSize;
+    private final CustomerMetrics.Operation applyMetrics;
+    private final Counter rejected;
+    private volatile boolean writing;
+
+    public CustomerWriteQueue(CustomerProperties properties, CustomerService customerService, CustomerMetrics metrics) {
+        this.properties = properties.getWrite();
+        this.customerService = customerService;
+        this.queue = new ArrayBlockingQueue<>(this.properties.getQueueSize());
+        this.batchSize = Math.min(this.properties.getBatchSize(), properties.getBulk().getBatchSize());
+        this.applyMetrics = metrics.operation(METRICS_LAYER, "applyBatch");
+
+        MeterRegistry registry = metrics.getRegistry();
+        Gauge.builder("customer.write.queue.size", queue, Queue::size)
+                .description("Acknowledged writes not applied yet")
+                .register(registry);
+        Gauge.builder("customer.write.queue.waiting", waitingCount, AtomicInteger::get)
+                .description("Writes waiting for room in the queue before they are acknowledged")
+                .register(registry);
+        this.rejected = Counter.builder("customer.write.queue.rejected")
+                .description("Writes turned away because too many were waiting for room in the queue")
+                .register(registry);
+    }
+
+    public CustomerProperties.Write.Ack getDefaultAck() {
+        return properties.getAck();
+    }
+
+    public Duration getRetryAfter() {
+        return properties.getRetryAfter();
+    }
+
+    /**
+     * Completes with the customer as it was queued, its id stays null until the writer inserts it
+     * */
+    public Mono<CustomerDto> enqueue(Mono<CustomerDto> customerDto) {
+        return customerDto.flatMap(customer -> {
+            if (customer.getName() == null) {
+                return Mono.error(new IllegalArgumentException("Customer name is required"));
+            }
+            if (waiting.isEmpty() && queue.offer(customer)) {
+                drain();
+                return Mono.just(customer);
+            }
+
+            // counted rather than sized, the size of the waiting queue takes a walk over all of it
+            if (waitingCount.incrementAndGet() > properties.getMaxWaiting()) {
+                waitingCount.decrementAndGet();
+                rejected.increment();
+                return Mono.error(new RejectedExecutionException(
+                        "More than " + properties.getMaxWaiting() + " writes are waiting for the write queue"));
+            }
+            Waiting wait = new Waiting(customer);
+            waiting.add(wait);
+            drain();
+            return wait.admitted.asMono()
+                    .doOnCancel(() -> wait.cancelled = true);
+        });
+    }
+
+    public boolean isIdle() {
+        return !writing && queue.isEmpty() && waiting.isEmpty();
+    }
+
+    /**
+     * Serialized by the work in progress count, whoever finds it at zero drains on behalf of everyone arriving meanwhile
+     * */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            admitWaiting();
+            if (!writing && !queue.isEmpty()) {
+                List<CustomerDto> batch = new ArrayList<>(Math.min(queue.size(), batchSize));
+                queue.drainTo(batch, batchSize);
+                writing = true;
+                applyMetrics.timed(Mono.defer(() -> customerService.addCustomers(Flux.fromIterable(batch)))
+                                .subscribeOn(writer)
+                                .doOnError(e -> log.error("Failed to apply {} queued writes", batch.size(), e))
+                                .onErrorComplete()
+                                .then())
+                        .doFinally(signal -> {
+                            writing = false;
+                            drain();
+                        })
+                        .subscribe();
+                admitWaiting();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void admitWaiting() {
+        for (Waiting next; (next = waiting.peek()) != null; ) {
+            if (!next.cancelled && !queue.offer(next.customer)) {
+                return;
+            }
+            waiting.poll();
+            waitingCount.decrementAndGet();
+            next.admitted.tryEmitValue(next.customer);
+        }
+    }
+
+    /**
+     * Give queued writes the chance to be applied before the service goes away
+     * */
+    @Override
+    public void close() {
+        Duration timeout = properties.getDrainTimeout();
+        Boolean drained = Flux.interval(Duration.ofMillis(10))
+                .map(tick -> isIdle())
+                .filter(idle -> idle)
+                .next()
+                .timeout(timeout, Mono.just(false))
+                .block();
+        if (!Boolean.TRUE.equals(drained)) {
+            log.warn("{} queued customer writes were not applied within {}", queue.size() + waitingCount.get(), timeout);
+        }
+        writer.dispose();
+    }
+
+    private static final class Waiting {
+        private final CustomerDto customer;
+        private final Sinks.One<CustomerDto> admitted = Sinks.one();
+        private volatile boolean cancelled;
+
+        private Waiting(CustomerDto customer) {
+            this.customer = customer;
+        }
+    }
+}
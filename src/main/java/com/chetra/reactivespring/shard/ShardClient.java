@@ -0,0 +1,111 @@
+package com.chetra.reactivespring.shard;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
+import com.chetra.reactivespring.dto.MultiGetDto;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.context.ContextView;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Forwards customer operations to the members of the {@link ShardRing} owning them.
+ * Connections to each member are pooled and kept alive, responses are streamed as NDJSON
+ * so scatter-gather listings merge customers as they arrive.
+ * Forwarded requests carry a header that {@link ShardForwardingFilter} turns into a context entry,
+ * the receiving member then answers from its own store instead of fanning out again
+ * */
+@Component
+public class ShardClient {
+    public static final String FORWARDED_HEADER = "X-Customer-Forwarded";
+
+    private final WebClient client;
+
+    public ShardClient(CustomerProperties properties, WebClient.Builder builder) {
+        CustomerProperties.Shard shard = properties.getShard();
+        ConnectionProvider connections = ConnectionProvider.builder("customer-shards")
+                .maxConnections(shard.getMaxConnections())
+                .pendingAcquireTimeout(shard.getTimeout())
+                .build();
+        this.client = builder
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)
+                        .responseTimeout(shard.getTimeout())))
+                .defaultHeader(FORWARDED_HEADER, "true")
+                .build();
+    }
+
+    /**
+     * Whether the operation runs on behalf of another member and must not be forwarded again
+     * */
+    public static boolean isForwarded(ContextView context) {
+        return context.hasKey(FORWARDED_HEADER);
+    }
+
+    public Mono<CustomerDto> getCustomerById(String member, int id) {
+        return client.get()
+                .uri(member + "/customer/{id}", id)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToMono(CustomerDto.class);
+    }
+
+    public Flux<CustomerDto> getCustomersByIds(String member, Collection<Integer> ids) {
+        return client.post()
+                .uri(member + "/customer/_mget")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(new MultiGetDto(List.copyOf(ids)))
+                .retrieve()
+                .bodyToFlux(CustomerDto.class);
+    }
+
+    /**
+     * A listing of GET /customer or one of its variants, built on top of the member's base URL
+     * */
+    public Flux<CustomerDto> list(String member, Function<UriBuilder, URI> uri) {
+        return client.get()
+                .uri(member, uri)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(CustomerDto.class);
+    }
+
+    public Mono<CustomerStatsDto> getStats(String member) {
+        return client.get()
+                .uri(member + "/customer/stats")
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToMono(CustomerStatsDto.class);
+    }
+
+    public Mono<CustomerDto> addCustomer(String member, CustomerDto customer, CustomerProperties.Write.Ack ack) {
+        return client.post()
+                .uri(member + "/customer?ack={ack}", ack.name().toLowerCase())
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(customer)
+                .retrieve()
+                .bodyToMono(CustomerDto.class);
+    }
+
+    public Mono<BulkInsertDto> addCustomers(String member, Flux<CustomerDto> customers) {
+        return client.post()
+                .uri(member + "/customer/_bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .body(customers, CustomerDto.class)
+                .retrieve()
+                .bodyToMono(BulkInsertDto.class);
+    }
+}
@@ -0,0 +1,22 @@
+package com.chetra.reactivespring.shard;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Marks requests forwarded by another member in the Reactor context of the whole exchange,
+ * response bodies are subscribed within it so the service sees the mark while producing them
+ * */
+@Component
+public class ShardForwardingFilter implements WebFilter {
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!exchange.getRequest().getHeaders().containsKey(ShardClient.FORWARDED_HEADER)) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange).contextWrite(context -> context.put(ShardClient.FORWARDED_HEADER, true));
+    }
+}
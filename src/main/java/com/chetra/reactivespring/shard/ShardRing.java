@@ -0,0 +1,101 @@
+package com.chetra.reactivespring.shard;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring over the members of customer.shard.members, deciding which instance owns a customer id.
+ * Every member places the same virtual nodes on the ring so all instances agree on owners
+ * without talking to each other, adding a member only moves the ids its nodes take over.
+ * With sharding disabled this instance owns every id
+ * */
+@Component
+public class ShardRing {
+    private final boolean enabled;
+    private final String self;
+    private final List<String> remotes;
+    private final long[] points;
+    private final String[] owners;
+
+    public ShardRing(CustomerProperties properties) {
+        CustomerProperties.Shard shard = properties.getShard();
+        this.enabled = shard.isEnabled();
+        this.self = normalize(shard.getSelf());
+
+        TreeSet<String> members = new TreeSet<>();
+        shard.getMembers().forEach(member -> members.add(normalize(member)));
+        if (enabled && !members.contains(self)) {
+            throw new IllegalStateException("customer.shard.self " + self + " is not one of customer.shard.members " + members);
+        }
+        this.remotes = members.stream().filter(member -> !member.equals(self)).toList();
+
+        int virtualNodes = shard.getVirtualNodes();
+        long[][] nodes = new long[members.size() * virtualNodes][];
+        String[] memberAt = members.toArray(String[]::new);
+        for (int m = 0; m < memberAt.length; m++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                nodes[m * virtualNodes + v] = new long[]{mix(((long) memberAt[m].hashCode() << 32) | v), m};
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[nodes.length];
+        this.owners = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            points[i] = nodes[i][0];
+            owners[i] = memberAt[(int) nodes[i][1]];
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String self() {
+        return self;
+    }
+
+    /**
+     * Every member but this one
+     * */
+    public List<String> remotes() {
+        return remotes;
+    }
+
+    public boolean isLocal(int id) {
+        return !enabled || owner(id).equals(self);
+    }
+
+    /**
+     * Member whose virtual node is the first at or after the id's point, wrapping around the ring
+     * */
+    public String owner(int id) {
+        if (!enabled) {
+            return self;
+        }
+        int i = Arrays.binarySearch(points, mix(id));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    private static String normalize(String member) {
+        return member.endsWith("/") ? member.substring(0, member.length() - 1) : member;
+    }
+
+    /**
+     * MurmurHash3's finalizer, spreads consecutive ids and node numbers over the whole ring
+     * */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,124 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.admission.AdmissionControl;
+import com.chetra.reactivespring.admission.GradientLimit;
+import com.chetra.reactivespring.config.CustomerProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.reactive.result.view.ViewResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlTest {
+    private static final ServerResponse.Context CONTEXT = new ServerResponse.Context() {
+        @Override
+        public List<HttpMessageWriter<?>> messageWriters() {
+            return HandlerStrategies.withDefaults().messageWriters();
+        }
+
+        @Override
+        public List<ViewResolver> viewResolvers() {
+            return List.of();
+        }
+    };
+
+    /**
+     * The limit grows while latency holds, shrinks once it climbs and ignores windows without queueing
+     * */
+    @Test
+    void limitFollowsLatency() {
+        GradientLimit limit = new GradientLimit(20, 1, 1000, 1.5, 0.2, 10);
+
+        samples(limit, 100, 1_000_000, 20);
+        int grown = limit.getLimit();
+        assertThat(grown).isGreaterThan(20);
+
+        samples(limit, 50, 5_000_000, grown);
+        assertThat(limit.getLimit()).isLessThan(grown);
+
+        int shrunk = limit.getLimit();
+        samples(limit, 100, 1_000_000, 1);
+        assertThat(limit.getLimit()).isEqualTo(shrunk);
+    }
+
+    /**
+     * Low priority requests only get half the limit, point lookups the rest,
+     * a permit is held until the response has been written
+     * */
+    @Test
+    void shedLowPriorityFirst() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getAdmission().setInitialLimit(4);
+        properties.getAdmission().setMinLimit(4);
+        properties.getAdmission().setMaxLimit(4);
+        AdmissionControl admission = new AdmissionControl(properties, TestCustomers.metrics());
+
+        ServerResponse low1 = handle(admission.filter(AdmissionControl.Priority.LOW));
+        handle(admission.filter(AdmissionControl.Priority.LOW));
+        ServerResponse rejected = handle(admission.filter(AdmissionControl.Priority.LOW));
+        assertThat(rejected.statusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(rejected.headers().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+
+        assertThat(handle(admission.filter(AdmissionControl.Priority.HIGH)).statusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(handle(admission.filter(AdmissionControl.Priority.HIGH)).statusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(handle(admission.filter(AdmissionControl.Priority.HIGH)).statusCode())
+                .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        low1.writeTo(MockServerWebExchange.from(MockServerHttpRequest.get("/customer")), CONTEXT).block();
+        assertThat(handle(admission.filter(AdmissionControl.Priority.HIGH)).statusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    /**
+     * Listings leave the limit alone however long they stream, point lookups move it
+     * */
+    @Test
+    void listingsDoNotTeachLimit() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getAdmission().setInitialLimit(3);
+        properties.getAdmission().setMinLimit(1);
+        properties.getAdmission().setWindowSize(1);
+        properties.getAdmission().setLowPriorityShare(1.0);
+        AdmissionControl admission = new AdmissionControl(properties, TestCustomers.metrics());
+
+        busyRounds(admission, AdmissionControl.Priority.LOW);
+        assertThat(admission.getLimit()).isEqualTo(3);
+
+        busyRounds(admission, AdmissionControl.Priority.HIGH);
+        assertThat(admission.getLimit()).isGreaterThan(3);
+    }
+
+    /**
+     * Rounds of three requests in flight together, enough queueing for a small limit to learn from
+     * */
+    private static void busyRounds(AdmissionControl admission, AdmissionControl.Priority priority) {
+        for (int round = 0; round < 20; round++) {
+            List<ServerResponse> responses = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                responses.add(handle(admission.filter(priority)));
+            }
+            responses.forEach(response -> response
+                    .writeTo(MockServerWebExchange.from(MockServerHttpRequest.get("/customer")), CONTEXT).block());
+        }
+    }
+
+    private static ServerResponse handle(HandlerFilterFunction<ServerResponse, ServerResponse> filter) {
+        return filter.filter(MockServerRequest.builder().build(), request -> ServerResponse.ok().build()).block();
+    }
+
+    private static void samples(GradientLimit limit, int count, long rttNanos, int inFlight) {
+        for (int i = 0; i < count; i++) {
+            limit.onSample(rttNanos, inFlight);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.chetra.reactivespring;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.chetra.reactivespring.config.BinaryCodecConfig;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.routers.CustomRouterConfig;
+import com.chetra.reactivespring.service.CustomerService;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+/**
+ * Bytes allocated per operation on the request hot paths, measured with the thread allocation counter
+ * after warming up so the JIT had its chance to scalar replace what it can.
+ * Everything runs on the test thread: the store uses the inline strategy
+ * and routes are driven through the HTTP handler without a server.
+ * Route budgets include the mock exchange and WebFlux itself, which take most of them.
+ * When a budget fails, find what the change allocates rather than raising the budget.
+ * Service budgets warm up quickly and run with every build, warming up the routes takes a while
+ * so those only run with mvn -Pallocation-test test
+ * */
+@Slf4j
+@Tag("allocation")
+public class AllocationBudgetTest {
+    private static final int WARMUP = 20_000;
+    private static final int MEASURED = 2_000;
+    private static final int ROUNDS = 3;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final Logger ROOT = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+    private static Level rootLevel;
+
+    private CustomerService service;
+    private HttpHandler handler;
+    private SoftAssertions budgets;
+
+    /**
+     * Debug logging renders every customer encoded, which is not what production pays for
+     * */
+    @BeforeAll
+    static void quietLogging() {
+        rootLevel = ROOT.getLevel();
+        ROOT.setLevel(Level.INFO);
+    }
+
+    @AfterAll
+    static void restoreLogging() {
+        ROOT.setLevel(rootLevel);
+    }
+
+    @BeforeEach
+    void setUp() {
+        assumeThat(THREADS.isThreadAllocatedMemorySupported()).isTrue();
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        service = TestCustomers.customerService(TestCustomers.customerDao());
+        CustomRouterConfig routes = new CustomRouterConfig(service, TestCustomers.admissionControl(),
+                TestCustomers.writeQueue(service));
+        handler = RouterFunctions.toHttpHandler(routes.customerRoute(), HandlerStrategies.builder()
+                .codecs(codecs -> BinaryCodecConfig.register(codecs.customCodecs()))
+                .build());
+        budgets = new SoftAssertions();
+    }
+
+    @Test
+    void serviceBudgets() {
+        check("getCustomerById", 768, () -> service.getCustomerById(7));
+        check("get50Customers", 1_024, () -> service.get50Customers().then());
+        check("getCustomers", 1_280, () -> service.getCustomers(10, 10).then());
+        check("getCustomersByIds", 1_152, () -> service.getCustomersByIds(List.of(1, 2, 3, 4, 5)).then());
+        check("getCustomersByName", 1_152, () -> service.getCustomersByName("Customer7").then());
+        check("searchCustomers prefix", 1_664, () -> service.searchCustomers("customer1", null, 10).then());
+        check("searchCustomers contains", 1_536, () -> service.searchCustomers(null, "mer4", 10).then());
+        check("addCustomer", 1_536, () -> service.addCustomer(Mono.just(new CustomerDto(7, "Customer7"))));
+        check("addCustomers", 3_072, () -> service.addCustomers(Flux.just(
+                new CustomerDto(7, "Customer7"), new CustomerDto(8, "Customer8"))));
+        budgets.assertAll();
+    }
+
+    @Test
+    @Tag("allocation-routes")
+    void routeBudgets() {
+        check("GET /customer/{id}", 34_000, () -> exchange(MockServerHttpRequest.get("/customer/7")));
+        check("GET /customer/{id} not modified", 29_000, () -> exchange(MockServerHttpRequest.get("/customer/7")
+                .ifNoneMatch("\"" + Long.toString(service.getVersion(7), 36) + "\"")));
+        check("GET /customer", 92_000, () -> exchange(MockServerHttpRequest.get("/customer")));
+        check("GET /customer ndjson", 52_000, () -> exchange(MockServerHttpRequest.get("/customer?after=10&limit=10")
+                .accept(MediaType.APPLICATION_NDJSON)));
+        check("GET /customer?ids", 44_000, () -> exchange(MockServerHttpRequest.get("/customer?ids=1,2,3,4,5")));
+        check("GET /customer?name", 38_000, () -> exchange(MockServerHttpRequest.get("/customer?name=Customer7")));
+        check("GET /customer/search", 52_000, () -> exchange(MockServerHttpRequest.get("/customer/search?prefix=customer1")));
+        check("POST /customer", 41_000, () -> exchange(MockServerHttpRequest.post("/customer")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"id\":7,\"name\":\"Customer7\"}")));
+        check("POST /customer/_mget", 52_000, () -> exchange(MockServerHttpRequest.post("/customer/_mget")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"ids\":[1,2,3,4,5]}")));
+        check("POST /customer/_bulk", 40_000, () -> exchange(MockServerHttpRequest.post("/customer/_bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body("{\"id\":7,\"name\":\"Customer7\"}\n{\"id\":8,\"name\":\"Customer8\"}\n")));
+        budgets.assertAll();
+    }
+
+    private Mono<?> exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return exchange(request.build());
+    }
+
+    private Mono<?> exchange(MockServerHttpRequest request) {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        return handler.handle(request, response).then(Mono.defer(response::getBodyAsString));
+    }
+
+    /**
+     * Lowest average of a few rounds, a stray JIT compilation or TLAB refill only ever adds
+     * */
+    private void check(String path, long budget, Supplier<Mono<?>> operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.get().block();
+        }
+
+        long perOperation = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < MEASURED; i++) {
+                operation.get().block();
+            }
+            perOperation = Math.min(perOperation, (THREADS.getCurrentThreadAllocatedBytes() - before) / MEASURED);
+        }
+
+        log.info("{} allocates {} bytes per operation, budget {}", path, perOperation, budget);
+        budgets.assertThat(perOperation)
+                .as("bytes allocated per operation by %s", path)
+                .isLessThanOrEqualTo(budget);
+    }
+}
@@ -0,0 +1,98 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.service.CachingCustomerService;
+import com.chetra.reactivespring.shard.ShardRing;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class CachingCustomerServiceTest {
+    private CustomerDao customerDao;
+    private CachingCustomerService customerService;
+
+    @BeforeEach
+    void setUp() {
+        customerDao = spy(TestCustomers.customerDao());
+        customerService = new CachingCustomerService(
+                TestCustomers.customerService(customerDao), new CustomerProperties(), TestCustomers.metrics(),
+                new ShardRing(new CustomerProperties()));
+    }
+
+    /**
+     * Concurrent misses for the same id are served by one store lookup
+     * */
+    @Test
+    void coalesceConcurrentMisses() {
+        when(customerDao.getCustomerById(any())).thenAnswer(invocation -> Mono
+                .just(new CustomerDto(invocation.getArgument(0), "Slow"))
+                .delayElement(Duration.ofMillis(100)));
+
+        StepVerifier.create(Flux.range(0, 20).flatMap(i -> customerService.getCustomerById(7)))
+                .expectNextCount(20)
+                .verifyComplete();
+
+        verify(customerDao, times(1)).getCustomerById(7);
+        assertThat(customerService.stats().getMissCount()).isEqualTo(1);
+        assertThat(customerService.stats().getHitCount()).isEqualTo(19);
+    }
+
+    /**
+     * Missing customers are not cached
+     * */
+    @Test
+    void doNotCacheMissing() {
+        StepVerifier.create(customerService.getCustomerById(500)).verifyComplete();
+        customerDao.saveCustomer(new CustomerDto(500, "Late")).block();
+
+        StepVerifier.create(customerService.getCustomerById(500))
+                .expectNext(new CustomerDto(500, "Late"))
+                .verifyComplete();
+    }
+
+    /**
+     * The store drops the cached entry before the write's version is visible, writes that bypass the service included
+     * */
+    @Test
+    void writeDropsEntryBeforeVersionMoves() {
+        customerService.getCustomerById(3).block();
+        long before = customerService.getVersion(3);
+        customerService.addCustomer(Mono.just(new CustomerDto(3, "Sokha"))).block();
+        assertThat(customerService.getVersion(3)).isGreaterThan(before);
+
+        StepVerifier.create(customerService.getCustomerById(3))
+                .expectNext(new CustomerDto(3, "Sokha"))
+                .verifyComplete();
+
+        customerDao.saveCustomer(new CustomerDto(3, "Dara")).block();
+        StepVerifier.create(customerService.getCustomerById(3))
+                .expectNext(new CustomerDto(3, "Dara"))
+                .verifyComplete();
+        verify(customerDao, times(3)).getCustomerById(3);
+    }
+
+    /**
+     * A multi-get only loads the ids that are not cached yet, in one store call
+     * */
+    @Test
+    void multiGetLoadsMissesTogether() {
+        customerService.getCustomerById(2).block();
+
+        StepVerifier.create(customerService.getCustomersByIds(List.of(3, 2, 999, 1)))
+                .expectNext(new CustomerDto(3, "Customer3"), new CustomerDto(2, "Customer2"),
+                        new CustomerDto(1, "Customer1"))
+                .verifyComplete();
+        verify(customerDao, times(1)).getCustomersByIds(argThat(ids -> ids.size() == 3 && !ids.contains(2)));
+    }
+}
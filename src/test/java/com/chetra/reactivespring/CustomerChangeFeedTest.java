@@ -0,0 +1,113 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.CustomerChangeDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.service.CustomerServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static com.chetra.reactivespring.config.CustomerProperties.Changes.Overflow.DISCONNECT;
+import static com.chetra.reactivespring.config.CustomerProperties.Changes.Overflow.LATEST;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CustomerChangeFeedTest {
+    private CustomerServiceImpl customerService;
+
+    @BeforeEach
+    void setUp() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getChanges().setBufferSize(4);
+        customerService = TestCustomers.customerService(TestCustomers.customerDao(), properties);
+    }
+
+    @Test
+    void streamLiveChanges() {
+        StepVerifier.create(customerService.getChanges(null, null).take(2))
+                .then(() -> add("Dara"))
+                .then(() -> add("Vanna"))
+                .expectNext(new CustomerChangeDto(1, new CustomerDto(51, "Dara")))
+                .expectNext(new CustomerChangeDto(2, new CustomerDto(52, "Vanna")))
+                .verifyComplete();
+    }
+
+    /**
+     * Resuming replays only the changes after the given sequence number, then continues live
+     * */
+    @Test
+    void resumeFromSequence() {
+        add("Dara");
+        add("Vanna");
+        add("Sokha");
+
+        StepVerifier.create(customerService.getChanges(1L, null).take(3))
+                .expectNextMatches(change -> change.getSequence() == 2)
+                .expectNextMatches(change -> change.getSequence() == 3)
+                .then(() -> add("Bopha"))
+                .expectNextMatches(change -> change.getSequence() == 4)
+                .verifyComplete();
+    }
+
+    /**
+     * A subscriber that requests nothing holds back neither writers nor other subscribers
+     * */
+    @Test
+    void slowSubscriberKeepsLatest() {
+        var fast = customerService.getChanges(null, null).take(10).collectList().toFuture();
+
+        StepVerifier.create(customerService.getChanges(null, LATEST), 0)
+                .expectSubscription()
+                .then(() -> addAll(10))
+                .then(() -> assertThat(fast).isCompletedWithValueMatching(changes -> changes.size() == 10))
+                .thenRequest(1)
+                .expectNextMatches(change -> change.getSequence() == 10)
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void disconnectOnOverflow() {
+        StepVerifier.create(customerService.getChanges(null, DISCONNECT), 0)
+                .expectSubscription()
+                .then(() -> addAll(5))
+                .thenRequest(10)
+                .expectNextCount(4)
+                .expectErrorMatches(Exceptions::isOverflow)
+                .verify();
+    }
+
+    /**
+     * Bulk writes are published too, and racing writes to an id are numbered in the order they were applied
+     * */
+    @Test
+    void changesFollowApplyOrder() {
+        var changes = customerService.getChanges(null, null).take(400).collectList().toFuture();
+
+        Flux.range(0, 4)
+                .flatMap(writer -> customerService.addCustomers(Flux.range(0, 100)
+                        .map(i -> new CustomerDto(7, "Writer" + writer + "-" + i)))
+                        .subscribeOn(Schedulers.parallel()))
+                .blockLast();
+
+        assertThat(changes).succeedsWithin(Duration.ofSeconds(5))
+                .satisfies(published -> assertThat(published.get(published.size() - 1).getCustomer())
+                        .isEqualTo(customerService.getCustomerById(7).block()));
+    }
+
+    private void addAll(int count) {
+        for (int i = 0; i < count; i++) {
+            add("Customer");
+        }
+    }
+
+    private void add(String name) {
+        customerService.addCustomer(Mono.just(new CustomerDto(null, name))).block();
+    }
+}
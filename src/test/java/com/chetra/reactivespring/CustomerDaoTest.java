@@ -0,0 +1,331 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.codec.CompressedCustomers;
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerJournal;
+import com.chetra.reactivespring.dao.CustomerQuery;
+import com.chetra.reactivespring.dao.CustomerSnapshot;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class CustomerDaoTest {
+    /**
+     * Sample customers are available right after construction
+     * */
+    @Test
+    void getSampleCustomer() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+
+        StepVerifier.create(customerDao.getCustomerById(7))
+                .expectNext(new CustomerDto(7, "Customer7"))
+                .verifyComplete();
+
+        StepVerifier.create(customerDao.getCustomerById(51))
+                .verifyComplete();
+    }
+
+    /**
+     * Only the written customer gets a new version, the generation follows every write
+     * */
+    @Test
+    void writesBumpVersions() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+        long seven = customerDao.getVersion(7);
+        long eight = customerDao.getVersion(8);
+        long generation = customerDao.getGeneration();
+
+        customerDao.saveCustomer(new CustomerDto(7, "Dara")).block();
+
+        assertThat(customerDao.getVersion(7)).isGreaterThan(seven);
+        assertThat(customerDao.getVersion(8)).isEqualTo(eight);
+        assertThat(customerDao.getGeneration()).isEqualTo(customerDao.getVersion(7)).isGreaterThan(generation);
+
+        customerDao.saveCustomer(new CustomerDto(null, "Vanna")).block();
+
+        assertThat(customerDao.getVersion(51)).isGreaterThan(customerDao.getVersion(7));
+    }
+
+    /**
+     * Versions are kept in a bounded number of slots, ids sharing one move together and never go back
+     * */
+    @Test
+    void versionSlotsAreShared() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getStore().setVersionSlots(8);
+        CustomerDao customerDao = TestCustomers.customerDao(properties, CustomerJournal.NONE, CustomerSnapshot.NONE);
+        long three = customerDao.getVersion(3);
+        long four = customerDao.getVersion(4);
+
+        customerDao.saveCustomer(new CustomerDto(11, "Dara")).block();
+
+        assertThat(customerDao.getVersion(3)).isEqualTo(customerDao.getVersion(11)).isGreaterThan(three);
+        assertThat(customerDao.getVersion(4)).isEqualTo(four);
+
+        long eleven = customerDao.getVersion(11);
+        customerDao.saveCustomer(new CustomerDto(3, "Vanna")).block();
+
+        assertThat(customerDao.getVersion(11)).isEqualTo(customerDao.getVersion(3)).isGreaterThan(eleven);
+    }
+
+    /**
+     * Customer without id gets the next free id
+     * */
+    @Test
+    void saveAssignsId() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+
+        StepVerifier.create(customerDao.saveCustomer(new CustomerDto(null, "Dara")))
+                .expectNext(new CustomerDto(51, "Dara"))
+                .verifyComplete();
+
+        StepVerifier.create(customerDao.getCustomerById(51))
+                .expectNext(new CustomerDto(51, "Dara"))
+                .verifyComplete();
+    }
+
+    /**
+     * Overwriting a customer moves it in the name index
+     * */
+    @Test
+    void updateReindexesName() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+
+        customerDao.saveCustomer(new CustomerDto(3, "Sokha")).block();
+
+        StepVerifier.create(customerDao.getCustomersByName("Customer3"))
+                .verifyComplete();
+        StepVerifier.create(customerDao.getCustomersByName("Sokha"))
+                .expectNext(new CustomerDto(3, "Sokha"))
+                .verifyComplete();
+    }
+
+    /**
+     * Stored entries are copies, mutating the input does not leak into the store
+     * */
+    @Test
+    void saveCopiesInput() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+        CustomerDto input = new CustomerDto(100, "Vanna");
+
+        customerDao.saveCustomer(input).block();
+        input.setName("Changed");
+
+        StepVerifier.create(customerDao.getCustomerById(100))
+                .expectNext(new CustomerDto(100, "Vanna"))
+                .verifyComplete();
+    }
+
+    /**
+     * Concurrent inserts never hand out the same id twice
+     * */
+    @Test
+    void concurrentInserts() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+
+        Flux.range(0, 10_000)
+                .parallel()
+                .runOn(Schedulers.parallel())
+                .flatMap(i -> customerDao.saveCustomer(new CustomerDto(null, "Customer" + i)))
+                .sequential()
+                .blockLast();
+
+        assertThat(customerDao.count()).isEqualTo(10_050);
+        StepVerifier.create(customerDao.getCustomersByName("Customer1").count())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void rejectMissingName() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+
+        StepVerifier.create(customerDao.saveCustomer(new CustomerDto(1, null)))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    /**
+     * Prefix search is case insensitive and returns names in order
+     * */
+    @Test
+    void searchByPrefix() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+
+        StepVerifier.create(customerDao.searchCustomers("customer4", null, 3))
+                .expectNext(new CustomerDto(4, "Customer4"), new CustomerDto(40, "Customer40"),
+                        new CustomerDto(41, "Customer41"))
+                .verifyComplete();
+    }
+
+    /**
+     * Substring search follows renames, short substrings are only answered along with a prefix
+     * */
+    @Test
+    void searchBySubstring() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+        customerDao.saveCustomer(new CustomerDto(60, "Sokha Chan")).block();
+        customerDao.saveCustomer(new CustomerDto(61, "Dara Chantha")).block();
+        customerDao.saveCustomer(new CustomerDto(60, "Sokha")).block();
+
+        StepVerifier.create(customerDao.searchCustomers(null, "CHAN", 10))
+                .expectNext(new CustomerDto(61, "Dara Chantha"))
+                .verifyComplete();
+        StepVerifier.create(customerDao.searchCustomers(null, "kh", 10))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(customerDao.searchCustomers("sok", "kh", 10))
+                .expectNext(new CustomerDto(60, "Sokha"))
+                .verifyComplete();
+        StepVerifier.create(customerDao.searchCustomers("customer", "9", 10).count())
+                .expectNext(5L)
+                .verifyComplete();
+    }
+
+    /**
+     * Customers renamed concurrently into and out of the same gram each stay findable by it
+     * */
+    @Test
+    void searchIndexSurvivesConcurrentRenames() {
+        CustomerDao customerDao = TestCustomers.customerDao();
+
+        Flux.range(0, 4)
+                .parallel(4)
+                .runOn(Schedulers.parallel())
+                .flatMap(writer -> Flux.range(0, 2_000)
+                        .concatMap(round -> customerDao.saveCustomer(new CustomerDto(70 + writer, round % 2 == 0 ? "Chan" : "Dara")))
+                        .then(customerDao.saveCustomer(new CustomerDto(70 + writer, "Chan"))))
+                .then()
+                .block();
+
+        StepVerifier.create(customerDao.searchCustomers(null, "chan", 10).map(CustomerDto::getId).collectList())
+                .assertNext(ids -> assertThat(ids).containsExactlyInAnyOrder(70, 71, 72, 73))
+                .verifyComplete();
+    }
+
+    /**
+     * Operations run on the configured strategy, virtual threads fall back to bounded elastic before JDK 21
+     * */
+    @Test
+    void executionStrategy() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getExecution().setStrategy(CustomerProperties.Execution.Strategy.PARALLEL);
+        CustomerDao customerDao = TestCustomers.customerDao(properties, CustomerJournal.NONE, CustomerSnapshot.NONE);
+
+        StepVerifier.create(customerDao.getCustomerById(1).map(customer -> Thread.currentThread().getName()))
+                .expectNextMatches(thread -> thread.startsWith("customer-"))
+                .verifyComplete();
+
+        properties.getExecution().setStrategy(CustomerProperties.Execution.Strategy.VIRTUAL_THREADS);
+        customerDao = TestCustomers.customerDao(properties, CustomerJournal.NONE, CustomerSnapshot.NONE);
+        boolean virtualThreads = Runtime.version().feature() >= 21;
+
+        StepVerifier.create(customerDao.getCustomerById(1).map(customer -> Thread.currentThread().getName()))
+                .expectNextMatches(thread -> virtualThreads || thread.startsWith("boundedElastic-"))
+                .verifyComplete();
+    }
+
+    /**
+     * Parallel scans merge rails back into id order, or emit the same customers in any order when unordered
+     * */
+    @Test
+    void parallelScan() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getStore().setSampleCustomers(5_000);
+        properties.getScan().setRails(4);
+        CustomerDao customerDao = TestCustomers.customerDao(properties, CustomerJournal.NONE, CustomerSnapshot.NONE);
+        CustomerQuery query = new CustomerQuery(100, Integer.MAX_VALUE, "*7", false);
+
+        List<CustomerDto> sequential = customerDao.scanCustomers(query, Integer.MAX_VALUE, false, true).collectList().block();
+        assertThat(sequential).hasSize(490).allMatch(customer -> customer.getId() % 10 == 7 && customer.getName() == null);
+        assertThat(customerDao.scanCustomers(query, Integer.MAX_VALUE, true, true).collectList().block())
+                .isEqualTo(sequential);
+        assertThat(customerDao.scanCustomers(query, Integer.MAX_VALUE, true, false).collectList().block())
+                .containsExactlyInAnyOrderElementsOf(sequential);
+        StepVerifier.create(customerDao.scanCustomers(query, 2, true, true))
+                .expectNext(new CustomerDto(107, null), new CustomerDto(117, null))
+                .verifyComplete();
+    }
+
+    /**
+     * A follower without a position gets a snapshot, one that resumes only gets the writes after its position,
+     * one following another run of the leader starts over
+     * */
+    @Test
+    void replicationResumesOrResyncs() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getStore().setSampleCustomers(5);
+        properties.getReplication().setRole(CustomerProperties.Replication.Role.LEADER);
+        CustomerDao customerDao = TestCustomers.customerDao(properties, CustomerJournal.NONE, CustomerSnapshot.NONE);
+        long epoch = customerDao.getReplicationEpoch();
+        long position = customerDao.getReplicationPosition();
+
+        StepVerifier.create(customerDao.replicate(0, 0))
+                .assertNext(batch -> {
+                    assertThat(batch.getPosition()).isEqualTo(position);
+                    assertThat(CompressedCustomers.decompress(batch.getCustomers(), batch.getCount()))
+                            .extracting(CustomerDto::getId)
+                            .containsExactlyInAnyOrder(1, 2, 3, 4, 5);
+                })
+                .then(() -> customerDao.saveCustomer(new CustomerDto(3, "Dara")).block())
+                .assertNext(batch -> {
+                    assertThat(batch.getPosition()).isEqualTo(position + 1);
+                    assertThat(CompressedCustomers.decompress(batch.getCustomers(), batch.getCount()))
+                            .containsExactly(new CustomerDto(3, "Dara"));
+                })
+                .thenCancel()
+                .verify();
+
+        StepVerifier.create(customerDao.replicate(position, epoch))
+                .assertNext(batch -> {
+                    assertThat(batch.getPosition()).isEqualTo(position + 1);
+                    assertThat(CompressedCustomers.decompress(batch.getCustomers(), batch.getCount()))
+                            .containsExactly(new CustomerDto(3, "Dara"));
+                })
+                .thenCancel()
+                .verify();
+
+        StepVerifier.create(customerDao.replicate(position, epoch - 1))
+                .assertNext(batch -> {
+                    assertThat(batch.getPosition()).isEqualTo(position + 1);
+                    assertThat(batch.getCount()).isEqualTo(5);
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    /**
+     * Aggregates move with every write, long names share the last length bucket
+     * */
+    @Test
+    void statsFollowWrites() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getStore().setSampleCustomers(20);
+        properties.getStats().setPrefixLength(2);
+        properties.getStats().setMaxNameLength(10);
+        CustomerDao customerDao = TestCustomers.customerDao(properties, CustomerJournal.NONE, CustomerSnapshot.NONE);
+
+        CustomerStatsDto stats = customerDao.getStats();
+        assertThat(stats.getCount()).isEqualTo(20);
+        assertThat(stats.getCountByPrefix()).containsExactly(entry("cu", 20L));
+        assertThat(stats.getCountByNameLength()).containsExactly(entry(9, 9L), entry(10, 11L));
+
+        customerDao.saveCustomer(new CustomerDto(3, "Customer3")).block();
+        customerDao.saveCustomer(new CustomerDto(4, "Sokha")).block();
+        customerDao.saveCustomer(new CustomerDto(null, "Sovannarith Chan")).block();
+
+        stats = customerDao.getStats();
+        assertThat(stats.getCount()).isEqualTo(21);
+        assertThat(stats.getCountByPrefix()).containsExactly(entry("cu", 19L), entry("so", 2L));
+        assertThat(stats.getCountByNameLength()).containsExactly(entry(5, 1L), entry(9, 8L), entry(10, 12L));
+    }
+}
@@ -0,0 +1,67 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.codec.CustomerJson;
+import com.chetra.reactivespring.codec.CustomerJsonEncoder;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CustomerJsonEncoderTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Hand-written JSON matches Jackson including escapes
+     * */
+    @Test
+    void matchesJackson() throws Exception {
+        CustomerDto customer = new CustomerDto(42, "Sok \"Dara\"\\ \n\u0001 ស្រី");
+
+        assertThat(new String(CustomerJson.toJson(customer), StandardCharsets.UTF_8))
+                .isEqualTo(objectMapper.writeValueAsString(customer));
+        assertThat(new String(CustomerJson.toJson(new CustomerDto(Integer.MIN_VALUE, "ü € \uD83D\uDE00")), StandardCharsets.UTF_8))
+                .isEqualTo(objectMapper.writeValueAsString(new CustomerDto(Integer.MIN_VALUE, "ü € \uD83D\uDE00")));
+        assertThat(new String(CustomerJson.toJson(new CustomerDto(0, "")), StandardCharsets.UTF_8))
+                .isEqualTo(objectMapper.writeValueAsString(new CustomerDto(0, "")));
+        assertThat(new String(CustomerJson.toJson(new CustomerDto(1, null)), StandardCharsets.UTF_8))
+                .isEqualTo(objectMapper.writeValueAsString(new CustomerDto(1, null)));
+        assertThat(new String(CustomerJson.toJson(new CustomerDto(null, "a")), StandardCharsets.UTF_8))
+                .isEqualTo(objectMapper.writeValueAsString(new CustomerDto(null, "a")));
+    }
+
+    @Test
+    void encodeArray() {
+        assertThat(encode(Flux.just(new CustomerDto(1, "a"), new CustomerDto(2, "b")), MediaType.APPLICATION_JSON))
+                .isEqualTo("[{\"id\":1,\"name\":\"a\"},{\"id\":2,\"name\":\"b\"}]");
+        assertThat(encode(Flux.empty(), MediaType.APPLICATION_JSON))
+                .isEqualTo("[]");
+    }
+
+    @Test
+    void encodeNdjson() {
+        assertThat(encode(Flux.just(new CustomerDto(1, "a"), new CustomerDto(2, "b")), MediaType.APPLICATION_NDJSON))
+                .isEqualTo("{\"id\":1,\"name\":\"a\"}\n{\"id\":2,\"name\":\"b\"}\n");
+    }
+
+    private String encode(Flux<CustomerDto> customers, MediaType mediaType) {
+        CustomerJsonEncoder encoder = new CustomerJsonEncoder();
+        var joined = DataBufferUtils.join(encoder.encode(customers, DefaultDataBufferFactory.sharedInstance,
+                        ResolvableType.forClass(CustomerDto.class), mediaType, Map.of()))
+                .map(buffer -> buffer.toString(StandardCharsets.UTF_8));
+        String[] result = new String[1];
+        StepVerifier.create(joined)
+                .consumeNextWith(json -> result[0] = json)
+                .verifyComplete();
+        return result[0];
+    }
+}
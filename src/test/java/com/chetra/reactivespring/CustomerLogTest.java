@@ -0,0 +1,253 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerLog;
+import com.chetra.reactivespring.dto.CustomerDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CustomerLogTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * Writes survive a restart, later writes to the same id win
+     * */
+    @Test
+    void recoverAfterRestart() {
+        try (CustomerLog log = new CustomerLog(directory, 1024 * 1024)) {
+            CustomerDao customerDao = TestCustomers.customerDao(log);
+            customerDao.saveCustomer(new CustomerDto(3, "Sokha")).block();
+            customerDao.saveCustomer(new CustomerDto(null, "Dara")).block();
+        }
+
+        try (CustomerLog log = new CustomerLog(directory, 1024 * 1024)) {
+            CustomerDao customerDao = TestCustomers.customerDao(log);
+
+            assertThat(customerDao.count()).isEqualTo(51);
+            StepVerifier.create(customerDao.getCustomerById(3))
+                    .expectNext(new CustomerDto(3, "Sokha"))
+                    .verifyComplete();
+            StepVerifier.create(customerDao.getCustomersByName("Dara"))
+                    .expectNext(new CustomerDto(51, "Dara"))
+                    .verifyComplete();
+        }
+    }
+
+    /**
+     * A record torn by a crash is dropped and cut off the segment
+     * */
+    @Test
+    void dropTornRecord() throws IOException {
+        try (CustomerLog log = new CustomerLog(directory, 1024 * 1024)) {
+            TestCustomers.customerDao(log);
+        }
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (CustomerLog log = new CustomerLog(directory, 1024 * 1024)) {
+            assertThat(TestCustomers.customerDao(log).count()).isEqualTo(50);
+        }
+        assertThat(Files.size(segment)).isEqualTo(size);
+    }
+
+    /**
+     * A batch torn by a failing write is cut off and undone in memory,
+     * so it is never read and writes acknowledged after it are still replayed
+     * */
+    @Test
+    void failedWriteDoesNotHideLaterWrites() {
+        TornWrites channel = new TornWrites();
+        try (CustomerLog log = new CustomerLog(directory, 1024 * 1024) {
+            @Override
+            protected FileChannel openSegment(Path path) throws IOException {
+                channel.delegate = super.openSegment(path);
+                return channel;
+            }
+        }) {
+            CustomerDao customerDao = TestCustomers.customerDao(log);
+            customerDao.saveCustomer(new CustomerDto(3, "Sokha")).block();
+            channel.tearNext = true;
+            StepVerifier.create(customerDao.saveCustomer(new CustomerDto(4, "Dara")))
+                    .expectError(IOException.class)
+                    .verify();
+            channel.tearNext = true;
+            StepVerifier.create(customerDao.saveCustomer(new CustomerDto(null, "Dara")))
+                    .expectError(IOException.class)
+                    .verify();
+            customerDao.saveCustomer(new CustomerDto(5, "Vanna")).block();
+
+            StepVerifier.create(customerDao.getCustomerById(4))
+                    .expectNext(new CustomerDto(4, "Customer4"))
+                    .verifyComplete();
+            StepVerifier.create(customerDao.getCustomersByName("Dara"))
+                    .verifyComplete();
+            assertThat(customerDao.count()).isEqualTo(50);
+            assertThat(customerDao.getStats().getCount()).isEqualTo(50);
+        }
+
+        try (CustomerLog log = new CustomerLog(directory, 1024 * 1024)) {
+            CustomerDao customerDao = TestCustomers.customerDao(log);
+
+            StepVerifier.create(customerDao.getCustomerById(3))
+                    .expectNext(new CustomerDto(3, "Sokha"))
+                    .verifyComplete();
+            StepVerifier.create(customerDao.getCustomerById(4))
+                    .expectNext(new CustomerDto(4, "Customer4"))
+                    .verifyComplete();
+            StepVerifier.create(customerDao.getCustomerById(5))
+                    .expectNext(new CustomerDto(5, "Vanna"))
+                    .verifyComplete();
+        }
+    }
+
+    /**
+     * Compaction folds overwritten records away and keeps the latest version
+     * */
+    @Test
+    void compact() throws IOException {
+        try (CustomerLog log = new CustomerLog(directory, 4096)) {
+            CustomerDao customerDao = TestCustomers.customerDao(log);
+            Flux.range(0, 2000)
+                    .concatMap(i -> customerDao.saveCustomer(new CustomerDto(i % 10 + 1, "Version" + i)))
+                    .blockLast();
+            assertThat(segments()).hasSizeGreaterThan(5);
+
+            customerDao.compact().block();
+            assertThat(segments()).hasSize(2);
+        }
+
+        try (CustomerLog log = new CustomerLog(directory, 4096)) {
+            CustomerDao customerDao = TestCustomers.customerDao(log);
+
+            assertThat(customerDao.count()).isEqualTo(50);
+            StepVerifier.create(customerDao.getCustomerById(10))
+                    .expectNext(new CustomerDto(10, "Version1999"))
+                    .verifyComplete();
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    /**
+     * Segment channel that, when asked to, writes half of the next buffer and then fails like a full disk
+     * */
+    private static class TornWrites extends FileChannel {
+        private FileChannel delegate;
+        private volatile boolean tearNext;
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!tearNext) {
+                return delegate.write(src);
+            }
+            tearNext = false;
+            delegate.write(src.slice(src.position(), src.remaining() / 2));
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.service.CustomerServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class CustomerLookupCoalescingTest {
+    private CustomerDao customerDao;
+    private CustomerServiceImpl customerService;
+
+    @BeforeEach
+    void setUp() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getLookup().setCoalesce(true);
+        properties.getLookup().setWindow(Duration.ofMillis(50));
+        properties.getLookup().setMaxBatchSize(10);
+        customerDao = spy(TestCustomers.customerDao());
+        customerService = TestCustomers.customerService(customerDao, properties);
+    }
+
+    /**
+     * Lookups arriving within the window share one multi-get, duplicates and unknown ids included
+     * */
+    @Test
+    void coalesceWithinWindow() {
+        StepVerifier.create(Flux.just(1, 2, 2, 999).flatMap(customerService::getCustomerById).collectList())
+                .expectNextMatches(customers -> customers.size() == 3
+                        && customers.contains(new CustomerDto(2, "Customer2")))
+                .verifyComplete();
+
+        verify(customerDao, times(1)).getCustomersByIds(any());
+        verify(customerDao, never()).getCustomerById(any());
+    }
+
+    /**
+     * A full batch is dispatched without waiting for the window
+     * */
+    @Test
+    void splitAtMaxBatchSize() {
+        StepVerifier.create(Flux.range(1, 25).flatMap(customerService::getCustomerById))
+                .expectNextCount(25)
+                .verifyComplete();
+
+        verify(customerDao, times(3)).getCustomersByIds(any());
+    }
+}
@@ -0,0 +1,437 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.codec.LengthDelimited;
+import com.chetra.reactivespring.config.BinaryCodecConfig;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.MultiGetDto;
+import com.chetra.reactivespring.routers.CustomRouterConfig;
+import com.chetra.reactivespring.service.CustomerService;
+import com.chetra.reactivespring.service.CustomerWriteQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+public class CustomerRouterTest {
+    private WebTestClient client;
+    private CustomerWriteQueue writeQueue;
+
+    @BeforeEach
+    void setUp() {
+        CustomerService service = TestCustomers.customerService(TestCustomers.customerDao());
+        writeQueue = TestCustomers.writeQueue(service);
+        CustomRouterConfig config = new CustomRouterConfig(service, TestCustomers.admissionControl(), writeQueue);
+        client = WebTestClient.bindToRouterFunction(config.customerRoute())
+                .handlerStrategies(HandlerStrategies.builder()
+                        .codecs(codecs -> BinaryCodecConfig.register(codecs.customCodecs()))
+                        .build())
+                .configureClient()
+                .codecs(codecs -> BinaryCodecConfig.register(codecs.customCodecs()))
+                .build();
+    }
+
+    /**
+     * Keyset pagination continues after the given id
+     * */
+    @Test
+    void pageAfterId() {
+        client.get().uri("/customer?after=10&limit=3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(List.of(
+                        new CustomerDto(11, "Customer11"),
+                        new CustomerDto(12, "Customer12"),
+                        new CustomerDto(13, "Customer13")
+                ));
+    }
+
+    @Test
+    void rejectInvalidPage() {
+        client.get().uri("/customer?limit=0")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Ids that are not ASCII digits within the int range match no route instead of failing the lookup,
+     * unknown ids are not found either
+     * */
+    @Test
+    void rejectIdsOutsideIntRange() {
+        client.get().uri("/customer/2147483648")
+                .exchange()
+                .expectStatus().isNotFound();
+        client.get().uri("/customer/\u0661\u0662")
+                .exchange()
+                .expectStatus().isNotFound();
+        client.get().uri("/customer/2147483647")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectHeader().doesNotExist("ETag");
+    }
+
+    /**
+     * Listings filter by id range and name glob and project fields, in parallel too
+     * */
+    @Test
+    void filterAndProject() {
+        client.get().uri("/customer?minId=10&maxId=30&nameLike=*1?&fields=name")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .json("[{\"name\":\"Customer10\"},{\"name\":\"Customer11\"},{\"name\":\"Customer12\"},"
+                        + "{\"name\":\"Customer13\"},{\"name\":\"Customer14\"},{\"name\":\"Customer15\"},"
+                        + "{\"name\":\"Customer16\"},{\"name\":\"Customer17\"},{\"name\":\"Customer18\"},"
+                        + "{\"name\":\"Customer19\"}]", true);
+
+        client.get().uri("/customer?nameLike=CUSTOMER4*&fields=id&parallel=true&limit=3")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .isEqualTo("{\"id\":4}\n{\"id\":40}\n{\"id\":41}\n");
+
+        client.get().uri("/customer?fields=email")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * NDJSON listing is streamed one customer per line
+     * */
+    @Test
+    void streamNdjson() {
+        var customers = client.get().uri("/customer?after=45")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(CustomerDto.class)
+                .getResponseBody();
+
+        StepVerifier.create(customers)
+                .expectNextCount(5)
+                .verifyComplete();
+    }
+
+    @Test
+    void postCustomer() {
+        client.post().uri("/customer")
+                .bodyValue(new CustomerDto(null, "Dara"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().location("/customer/51")
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(51, "Dara"));
+
+        client.get().uri("/customer/51")
+                .exchange()
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(51, "Dara"));
+    }
+
+    /**
+     * Applied writes are answered once visible, enqueued ones with 202 before the background writer applied them
+     * */
+    @Test
+    void acknowledgementLevels() {
+        client.post().uri("/customer?ack=applied")
+                .bodyValue(new CustomerDto(5, "Dara"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().location("/customer/5");
+
+        client.post().uri("/customer?ack=enqueued")
+                .bodyValue(new CustomerDto(7, "Vanna"))
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().location("/customer/7")
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(7, "Vanna"));
+        client.post().uri("/customer?ack=enqueued")
+                .bodyValue(new CustomerDto(null, "Sokha"))
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().doesNotExist("Location");
+        Flux.interval(Duration.ofMillis(5)).filter(tick -> writeQueue.isIdle()).blockFirst(Duration.ofSeconds(5));
+
+        client.get().uri("/customer/7")
+                .exchange()
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(7, "Vanna"));
+        client.get().uri("/customer?name=Sokha")
+                .exchange()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(List.of(new CustomerDto(51, "Sokha")));
+
+        client.post().uri("/customer?ack=enqueued")
+                .bodyValue(new CustomerDto(8, null))
+                .exchange()
+                .expectStatus().isBadRequest();
+        client.post().uri("/customer?ack=eventually")
+                .bodyValue(new CustomerDto(8, "Bopha"))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Bulk ingest reads an NDJSON body and reports invalid rows as rejected
+     * */
+    @Test
+    void bulkInsert() {
+        String body = "{\"name\":\"Dara\"}\n{\"id\":60}\n{\"id\":61,\"name\":\"Vanna\"}\n";
+
+        client.post().uri("/customer/_bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BulkInsertDto.class)
+                .isEqualTo(new BulkInsertDto(2, 1));
+
+        client.get().uri("/customer/61")
+                .exchange()
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(61, "Vanna"));
+    }
+
+    /**
+     * Multi-get keeps the requested order and leaves out unknown ids
+     * */
+    @Test
+    void getByIds() {
+        client.get().uri("/customer?ids=5,999,2,5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(List.of(new CustomerDto(5, "Customer5"), new CustomerDto(2, "Customer2")));
+
+        client.get().uri("/customer?ids=1,x")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void postMultiGet() {
+        client.post().uri("/customer/_mget")
+                .bodyValue(new MultiGetDto(List.of(7, 8)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(List.of(new CustomerDto(7, "Customer7"), new CustomerDto(8, "Customer8")));
+    }
+
+    /**
+     * Reconnecting with Last-Event-ID replays the missed changes as server-sent events
+     * */
+    @Test
+    void resumeChanges() {
+        client.post().uri("/customer").bodyValue(new CustomerDto(null, "Dara")).exchange();
+        client.post().uri("/customer").bodyValue(new CustomerDto(null, "Vanna")).exchange();
+
+        var events = client.get().uri("/customer/changes")
+                .header("Last-Event-ID", "1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<CustomerDto>>() {
+                })
+                .getResponseBody();
+
+        StepVerifier.create(events.take(1))
+                .expectNextMatches(event -> "2".equals(event.id())
+                        && new CustomerDto(52, "Vanna").equals(event.data()))
+                .verifyComplete();
+
+        client.get().uri("/customer/changes?overflow=sometimes")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void searchCustomers() {
+        client.get().uri("/customer/search?contains=mer50")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(List.of(new CustomerDto(50, "Customer50")));
+
+        client.get().uri("/customer/search?limit=5")
+                .exchange()
+                .expectStatus().isBadRequest();
+        client.get().uri("/customer/search?contains=50")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Single customers and lists are negotiated as CBOR when asked for
+     * */
+    @Test
+    void negotiateCbor() {
+        client.post().uri("/customer")
+                .contentType(MediaType.APPLICATION_CBOR)
+                .accept(MediaType.APPLICATION_CBOR)
+                .bodyValue(new CustomerDto(null, "Dara"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR)
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(51, "Dara"));
+
+        client.get().uri("/customer?ids=51,1")
+                .accept(MediaType.APPLICATION_CBOR)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR)
+                .expectBody(new ParameterizedTypeReference<List<CustomerDto>>() {
+                })
+                .isEqualTo(List.of(new CustomerDto(51, "Dara"), new CustomerDto(1, "Customer1")));
+    }
+
+    /**
+     * Accepted types are picked by their quality, whatever order they are listed in
+     * */
+    @Test
+    void negotiateByQuality() {
+        client.get().uri("/customer/1")
+                .header(HttpHeaders.ACCEPT, "application/cbor;q=0.5, application/json")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON);
+        client.get().uri("/customer/1")
+                .header(HttpHeaders.ACCEPT, "application/json;q=0.4, application/cbor")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR);
+        client.get().uri("/customer?ids=1,2")
+                .header(HttpHeaders.ACCEPT, "application/cbor;q=0.2, application/x-ndjson;q=0.5, */*;q=0.9")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON);
+        client.get().uri("/customer?ids=1,2")
+                .header(HttpHeaders.ACCEPT, "application/json;q=0.1, application/x-ndjson;q=0.5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON);
+    }
+
+    /**
+     * Length delimited Smile is streamed one frame per customer and accepted for bulk ingest
+     * */
+    @Test
+    void streamSmile() {
+        var customers = client.get().uri("/customer?after=45")
+                .accept(LengthDelimited.SMILE_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(LengthDelimited.SMILE_STREAM)
+                .returnResult(CustomerDto.class)
+                .getResponseBody();
+
+        StepVerifier.create(customers)
+                .expectNext(new CustomerDto(46, "Customer46"))
+                .expectNextCount(4)
+                .verifyComplete();
+
+        client.post().uri("/customer/_bulk")
+                .contentType(LengthDelimited.CBOR_STREAM)
+                .body(Flux.just(new CustomerDto(null, "Dara"), new CustomerDto(60, "Vanna")), CustomerDto.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BulkInsertDto.class)
+                .isEqualTo(new BulkInsertDto(2, 0));
+    }
+
+    /**
+     * A matching If-None-Match is answered with 304 until the customer is written again
+     * */
+    @Test
+    void conditionalGet() {
+        String etag = client.get().uri("/customer/5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("Last-Modified")
+                .returnResult(CustomerDto.class)
+                .getResponseHeaders().getETag();
+
+        client.get().uri("/customer/5")
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals("ETag", etag)
+                .expectBody().isEmpty();
+
+        client.get().uri("/customer/5")
+                .accept(MediaType.APPLICATION_CBOR)
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus().isOk();
+
+        client.post().uri("/customer").bodyValue(new CustomerDto(5, "Dara")).exchange();
+
+        client.get().uri("/customer/5")
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(5, "Dara"));
+    }
+
+    /**
+     * Lists share the store generation, a write to any customer changes it
+     * */
+    @Test
+    void conditionalList() {
+        String etag = client.get().uri("/customer?after=10&limit=3")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(CustomerDto.class)
+                .getResponseHeaders().getETag();
+
+        client.get().uri("/customer?after=10&limit=3")
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        client.post().uri("/customer").bodyValue(new CustomerDto(null, "Dara")).exchange();
+
+        client.get().uri("/customer?after=10&limit=3")
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    /**
+     * Stats follow inserts and renames without rescanning the customers
+     * */
+    @Test
+    void stats() {
+        client.get().uri("/customer/stats")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .json("{\"count\":50,\"countByPrefix\":{\"c\":50},\"countByNameLength\":{\"9\":9,\"10\":41}}", true);
+
+        client.post().uri("/customer").bodyValue(new CustomerDto(null, "Dara")).exchange().expectStatus().isCreated();
+        client.post().uri("/customer").bodyValue(new CustomerDto(5, "Bopha")).exchange().expectStatus().isCreated();
+
+        client.get().uri("/customer/stats")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .json("{\"count\":51,\"countByPrefix\":{\"b\":1,\"c\":49,\"d\":1},"
+                        + "\"countByNameLength\":{\"4\":1,\"5\":1,\"9\":8,\"10\":41}}", true);
+    }
+}
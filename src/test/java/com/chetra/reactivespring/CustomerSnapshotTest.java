@@ -0,0 +1,111 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerJournal;
+import com.chetra.reactivespring.dao.CustomerLog;
+import com.chetra.reactivespring.dao.CustomerSnapshot;
+import com.chetra.reactivespring.dto.CustomerDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CustomerSnapshotTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * A snapshot alone restores the store
+     * */
+    @Test
+    void restoreFromSnapshot() {
+        CustomerSnapshot snapshot = new CustomerSnapshot(directory.resolve("customers.snapshot"));
+        CustomerDao customerDao = TestCustomers.customerDao(CustomerJournal.NONE, snapshot);
+        customerDao.saveCustomer(new CustomerDto(null, "ស្រីមុំ")).block();
+        customerDao.snapshot().block();
+
+        CustomerDao restored = TestCustomers.customerDao(CustomerJournal.NONE, snapshot);
+
+        assertThat(restored.count()).isEqualTo(51);
+        StepVerifier.create(restored.getCustomerById(51))
+                .expectNext(new CustomerDto(51, "ស្រីមុំ"))
+                .verifyComplete();
+    }
+
+    /**
+     * Writes after the snapshot come back from the journal, segments the snapshot covers are deleted
+     * */
+    @Test
+    void snapshotThenJournal() throws IOException {
+        CustomerSnapshot snapshot = new CustomerSnapshot(directory.resolve("customers.snapshot"));
+        try (CustomerLog log = new CustomerLog(directory, 1024 * 1024)) {
+            CustomerDao customerDao = TestCustomers.customerDao(log, snapshot);
+            customerDao.saveCustomer(new CustomerDto(1, "Before")).block();
+            customerDao.snapshot().block();
+            customerDao.saveCustomer(new CustomerDto(2, "After")).block();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(path -> path.toString().endsWith(".log"))).hasSize(1);
+        }
+
+        try (CustomerLog log = new CustomerLog(directory, 1024 * 1024)) {
+            CustomerDao restored = TestCustomers.customerDao(log, snapshot);
+
+            assertThat(restored.count()).isEqualTo(50);
+            StepVerifier.create(restored.getCustomerById(1))
+                    .expectNext(new CustomerDto(1, "Before"))
+                    .verifyComplete();
+            StepVerifier.create(restored.getCustomerById(2))
+                    .expectNext(new CustomerDto(2, "After"))
+                    .verifyComplete();
+        }
+    }
+
+    /**
+     * With snapshots, compaction leaves nothing in the journal to replay on top of the snapshot
+     * */
+    @Test
+    void compactIntoSnapshot() throws IOException {
+        CustomerSnapshot snapshot = new CustomerSnapshot(directory.resolve("customers.snapshot"));
+        try (CustomerLog log = new CustomerLog(directory, 4096)) {
+            CustomerDao customerDao = TestCustomers.customerDao(log, snapshot);
+            Flux.range(0, 2000)
+                    .concatMap(i -> customerDao.saveCustomer(new CustomerDto(i % 10 + 1, "Version" + i)))
+                    .blockLast();
+
+            customerDao.compact().block();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.filter(path -> path.toString().endsWith(".log")).mapToLong(path -> path.toFile().length()).sum())
+                    .isZero();
+        }
+
+        try (CustomerLog log = new CustomerLog(directory, 4096)) {
+            CustomerDao restored = TestCustomers.customerDao(log, snapshot);
+
+            assertThat(restored.count()).isEqualTo(50);
+            StepVerifier.create(restored.getCustomerById(10))
+                    .expectNext(new CustomerDto(10, "Version1999"))
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    void rejectTruncatedSnapshot() throws IOException {
+        Path path = directory.resolve("customers.snapshot");
+        Files.write(path, new byte[]{0x43, 0x53, 0x4E, 0x50, 0, 0, 0, 1});
+
+        assertThatThrownBy(() -> new CustomerSnapshot(path).load(customer -> {
+        }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("Not a customer snapshot: " + path);
+    }
+}
@@ -0,0 +1,203 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerJournal;
+import com.chetra.reactivespring.dao.CustomerQuery;
+import com.chetra.reactivespring.dao.CustomerSnapshot;
+import com.chetra.reactivespring.dao.CustomerStore;
+import com.chetra.reactivespring.dto.CustomerDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.util.unit.DataSize;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CustomerStoreTest {
+    private static final Consumer<CustomerDto> NONE = previous -> {
+    };
+
+    @ParameterizedTest
+    @EnumSource(CustomerProperties.Store.Mode.class)
+    void putAndGet(CustomerProperties.Store.Mode mode) {
+        CustomerStore store = store(mode, DataSize.ofKilobytes(64));
+        store.put(new CustomerDto(1, "Dara"), NONE);
+        store.put(new CustomerDto(2, "ស្រីមុំ"), NONE);
+
+        assertThat(store.get(2)).isEqualTo(new CustomerDto(2, "ស្រីមុំ"));
+        assertThat(store.get(3)).isNull();
+        assertThat(store.putIfAbsent(new CustomerDto(1, "Vanna"), NONE)).isFalse();
+        assertThat(store.get(1)).isEqualTo(new CustomerDto(1, "Dara"));
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    /**
+     * Aa and BB share a hash code, renames move the id between names of the same hash
+     * */
+    @ParameterizedTest
+    @EnumSource(CustomerProperties.Store.Mode.class)
+    void renameMovesNameIndex(CustomerProperties.Store.Mode mode) {
+        CustomerStore store = store(mode, DataSize.ofKilobytes(64));
+        store.put(new CustomerDto(1, "Aa"), NONE);
+        store.put(new CustomerDto(2, "BB"), NONE);
+        store.put(new CustomerDto(3, "Aa"), NONE);
+        store.put(new CustomerDto(1, "BB"), NONE);
+        store.put(new CustomerDto(3, "Aa"), NONE);
+
+        assertThat(store.getByName("Aa")).containsExactly(new CustomerDto(3, "Aa"));
+        assertThat(store.getByName("BB")).containsExactlyInAnyOrder(new CustomerDto(1, "BB"), new CustomerDto(2, "BB"));
+        assertThat(store.getByName("Cc")).isEmpty();
+    }
+
+    /**
+     * Replace only applies while the id holds the expected customer, a removed id can be stored again
+     * */
+    @ParameterizedTest
+    @EnumSource(CustomerProperties.Store.Mode.class)
+    void replaceExpectedCustomer(CustomerProperties.Store.Mode mode) {
+        CustomerStore store = store(mode, DataSize.ofKilobytes(64));
+        store.put(new CustomerDto(1, "Aa"), NONE);
+        store.put(new CustomerDto(2, "BB"), NONE);
+        store.put(new CustomerDto(3, "Dara"), NONE);
+
+        assertThat(store.replace(new CustomerDto(1, "Dara"), null, NONE)).isFalse();
+        assertThat(store.replace(new CustomerDto(3, "Dara"), new CustomerDto(3, "Sokha"), NONE)).isTrue();
+        assertThat(store.replace(new CustomerDto(1, "Aa"), null, NONE)).isTrue();
+
+        assertThat(store.get(1)).isNull();
+        assertThat(store.getByName("Aa")).isEmpty();
+        assertThat(store.getByName("BB")).containsExactly(new CustomerDto(2, "BB"));
+        assertThat(store.list(null)).containsExactly(new CustomerDto(2, "BB"), new CustomerDto(3, "Sokha"));
+        assertThat(store.values()).containsExactlyInAnyOrder(new CustomerDto(2, "BB"), new CustomerDto(3, "Sokha"));
+        assertThat(store.size()).isEqualTo(2);
+
+        assertThat(store.putIfAbsent(new CustomerDto(1, "Vanna"), NONE)).isTrue();
+        assertThat(store.list(null)).extracting(CustomerDto::getId).containsExactly(1, 2, 3);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CustomerProperties.Store.Mode.class)
+    void listInIdOrder(CustomerProperties.Store.Mode mode) {
+        CustomerStore store = store(mode, DataSize.ofKilobytes(64));
+        for (int id : new int[]{70_000, -5, 3, Integer.MAX_VALUE, Integer.MIN_VALUE, 1}) {
+            store.put(new CustomerDto(id, "Customer" + id), NONE);
+        }
+
+        assertThat(store.list(null)).extracting(CustomerDto::getId)
+                .containsExactly(Integer.MIN_VALUE, -5, 1, 3, 70_000, Integer.MAX_VALUE);
+        assertThat(store.list(3)).extracting(CustomerDto::getId)
+                .containsExactly(70_000, Integer.MAX_VALUE);
+        assertThat(store.list(Integer.MAX_VALUE)).isEmpty();
+    }
+
+    /**
+     * Scans bound ids, filter names by glob and leave the name out unless projected
+     * */
+    @ParameterizedTest
+    @EnumSource(CustomerProperties.Store.Mode.class)
+    void scanFiltersAndProjects(CustomerProperties.Store.Mode mode) {
+        CustomerStore store = store(mode, DataSize.ofKilobytes(64));
+        for (int id : new int[]{Integer.MIN_VALUE, 1, 2, 12, 70_000, Integer.MAX_VALUE}) {
+            store.put(new CustomerDto(id, "Customer" + id), NONE);
+        }
+
+        assertThat(store.scan(new CustomerQuery(2, Integer.MAX_VALUE, "customer?*", true)))
+                .containsExactly(new CustomerDto(2, "Customer2"), new CustomerDto(12, "Customer12"),
+                        new CustomerDto(70_000, "Customer70000"), new CustomerDto(Integer.MAX_VALUE, "Customer" + Integer.MAX_VALUE));
+        assertThat(store.scan(new CustomerQuery(Integer.MIN_VALUE, 100, "*2", false)))
+                .containsExactly(new CustomerDto(2, null), new CustomerDto(12, null));
+        assertThat(store.scan(new CustomerQuery(Integer.MIN_VALUE, 1, null, false)))
+                .containsExactly(new CustomerDto(Integer.MIN_VALUE, null), new CustomerDto(1, null));
+        assertThat(store.scan(new CustomerQuery(Integer.MIN_VALUE, Integer.MAX_VALUE, "C*2*4?", false)))
+                .extracting(CustomerDto::getId)
+                .containsExactly(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertThat(store.scan(new CustomerQuery(13, 12, null, true))).isEmpty();
+    }
+
+    /**
+     * A write's callback only holds back writes to its own id, other writes and reads go ahead meanwhile
+     * */
+    @ParameterizedTest
+    @EnumSource(CustomerProperties.Store.Mode.class)
+    void callbackHoldsOnlyItsOwnId(CustomerProperties.Store.Mode mode) throws Exception {
+        CustomerStore store = store(mode, DataSize.ofKilobytes(64));
+        store.put(new CustomerDto(3, "Sokha"), NONE);
+        CountDownLatch inCallback = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> store.put(new CustomerDto(1, "Dara"), previous -> {
+            inCallback.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        try {
+            assertThat(inCallback.await(5, TimeUnit.SECONDS)).isTrue();
+            CompletableFuture.runAsync(() -> store.put(new CustomerDto(2, "Vanna"), NONE)).get(5, TimeUnit.SECONDS);
+            assertThat(CompletableFuture.supplyAsync(() -> store.get(3)).get(5, TimeUnit.SECONDS))
+                    .isEqualTo(new CustomerDto(3, "Sokha"));
+            assertThat(store.get(2)).isEqualTo(new CustomerDto(2, "Vanna"));
+        } finally {
+            release.countDown();
+        }
+        slow.get(5, TimeUnit.SECONDS);
+        assertThat(store.get(1)).isEqualTo(new CustomerDto(1, "Dara"));
+    }
+
+    /**
+     * Overwrites in small slabs trigger compaction, every customer survives it
+     * */
+    @Test
+    void offHeapReclaimsOverwrittenRecords() {
+        CustomerStore store = store(CustomerProperties.Store.Mode.OFF_HEAP, DataSize.ofKilobytes(4));
+        for (int round = 0; round < 50; round++) {
+            for (int id = 1; id <= 100; id++) {
+                store.put(new CustomerDto(id, "Customer" + id + "-" + round), NONE);
+            }
+        }
+
+        List<CustomerDto> values = new ArrayList<>();
+        store.values().forEach(values::add);
+        assertThat(values).hasSize(100).contains(new CustomerDto(42, "Customer42-49"));
+        assertThat(store.getByName("Customer7-49")).containsExactly(new CustomerDto(7, "Customer7-49"));
+
+        CustomerStore.Footprint footprint = store.footprint();
+        assertThat(footprint.records()).isEqualTo(100);
+        assertThat(footprint.offHeapBytes()).isLessThanOrEqualTo(4 * footprint.offHeapLiveBytes() + 8192);
+    }
+
+    @Test
+    void offHeapDao() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getStore().setMode(CustomerProperties.Store.Mode.OFF_HEAP);
+        CustomerDao customerDao = TestCustomers.customerDao(properties, CustomerJournal.NONE, CustomerSnapshot.NONE);
+        long heapBytes = customerDao.footprint().heapBytes();
+
+        customerDao.saveCustomer(new CustomerDto(null, "Dara")).block();
+
+        StepVerifier.create(customerDao.getCustomers(49, 5))
+                .expectNext(new CustomerDto(50, "Customer50"), new CustomerDto(51, "Dara"))
+                .verifyComplete();
+        assertThat(customerDao.footprint().offHeapLiveBytes()).isPositive();
+        // the tables had room for it, the search indexes kept on the heap grew
+        assertThat(customerDao.footprint().heapBytes()).isGreaterThan(heapBytes);
+    }
+
+    private static CustomerStore store(CustomerProperties.Store.Mode mode, DataSize slabSize) {
+        CustomerProperties.Store properties = new CustomerProperties.Store();
+        properties.setMode(mode);
+        properties.setSlabSize(slabSize);
+        return CustomerStore.create(properties);
+    }
+}
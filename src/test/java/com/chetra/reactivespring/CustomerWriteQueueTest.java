@@ -0,0 +1,145 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerChangeDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.service.CustomerService;
+import com.chetra.reactivespring.service.CustomerWriteQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class CustomerWriteQueueTest {
+    private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+    private CustomerWriteQueue writeQueue;
+
+    /**
+     * Batches stay in flight until the test completes them
+     * */
+    @BeforeEach
+    void setUp() {
+        CustomerService customerService = mock(CustomerService.class);
+        when(customerService.addCustomers(any())).thenAnswer(invocation -> {
+            Flux<CustomerDto> customers = invocation.getArgument(0);
+            Sinks.One<BulkInsertDto> done = Sinks.one();
+            return customers.collectList()
+                    .doOnNext(batch -> batches.add(new Batch(batch, Thread.currentThread().getName(), done)))
+                    .then(done.asMono());
+        });
+
+        CustomerProperties properties = new CustomerProperties();
+        properties.getWrite().setQueueSize(2);
+        properties.getWrite().setBatchSize(2);
+        properties.getWrite().setMaxWaiting(1);
+        writeQueue = new CustomerWriteQueue(properties, customerService, TestCustomers.metrics());
+    }
+
+    /**
+     * Writes are acknowledged while the queue has room, then only as the writer takes batches off it.
+     * Each batch is one bulk write made on the writer's thread
+     * */
+    @Test
+    void fullQueueHoldsBackAcknowledgements() throws InterruptedException {
+        CustomerDto first = new CustomerDto(1, "Dara");
+        CustomerDto second = new CustomerDto(2, "Vanna");
+        CustomerDto third = new CustomerDto(3, "Sokha");
+        CustomerDto fourth = new CustomerDto(4, "Bopha");
+
+        assertThat(writeQueue.enqueue(Mono.just(first)).toFuture()).isCompletedWithValue(first);
+        assertThat(writeQueue.enqueue(Mono.just(second)).toFuture()).isCompletedWithValue(second);
+        assertThat(writeQueue.enqueue(Mono.just(third)).toFuture()).isCompletedWithValue(third);
+        CompletableFuture<CustomerDto> waiting = writeQueue.enqueue(Mono.just(fourth)).toFuture();
+        assertThat(waiting).isNotDone();
+
+        Batch batch = nextBatch();
+        assertThat(batch.customers()).containsExactly(first);
+        assertThat(batch.thread()).startsWith("customer-write-queue");
+
+        batch.complete();
+        assertThat(waiting).succeedsWithin(Duration.ofSeconds(5)).isEqualTo(fourth);
+        batch = nextBatch();
+        assertThat(batch.customers()).containsExactly(second, third);
+
+        batch.complete();
+        batch = nextBatch();
+        assertThat(batch.customers()).containsExactly(fourth);
+        assertThat(writeQueue.isIdle()).isFalse();
+
+        batch.complete();
+        Flux.interval(Duration.ofMillis(5)).filter(tick -> writeQueue.isIdle()).blockFirst(Duration.ofSeconds(5));
+    }
+
+    /**
+     * Once as many writes wait for room as allowed, further writes are turned away until one of them got in
+     * */
+    @Test
+    void tooManyWaitingAreRejected() throws InterruptedException {
+        for (int id = 1; id <= 3; id++) {
+            writeQueue.enqueue(Mono.just(new CustomerDto(id, "Dara"))).subscribe();
+        }
+        CompletableFuture<CustomerDto> waiting = writeQueue.enqueue(Mono.just(new CustomerDto(4, "Vanna"))).toFuture();
+
+        StepVerifier.create(writeQueue.enqueue(Mono.just(new CustomerDto(5, "Sokha"))))
+                .expectError(RejectedExecutionException.class)
+                .verify();
+
+        nextBatch().complete();
+        assertThat(waiting).succeedsWithin(Duration.ofSeconds(5));
+        assertThat(writeQueue.enqueue(Mono.just(new CustomerDto(5, "Sokha"))).toFuture()).isCompleted();
+        assertThat(writeQueue.enqueue(Mono.just(new CustomerDto(6, "Bopha"))).toFuture()).isNotDone();
+    }
+
+    /**
+     * Queued writes are published to subscribers of the change feed once applied
+     * */
+    @Test
+    void appliedWritesReachChangeFeed() {
+        CustomerService customerService = TestCustomers.customerService(TestCustomers.customerDao());
+        CustomerWriteQueue writeQueue = TestCustomers.writeQueue(customerService);
+
+        StepVerifier.create(customerService.getChanges(null, null).map(CustomerChangeDto::getCustomer).take(2))
+                .then(() -> {
+                    writeQueue.enqueue(Mono.just(new CustomerDto(7, "Vanna"))).block();
+                    writeQueue.enqueue(Mono.just(new CustomerDto(null, "Sokha"))).block();
+                })
+                .expectNext(new CustomerDto(7, "Vanna"), new CustomerDto(51, "Sokha"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void rejectMissingName() {
+        StepVerifier.create(writeQueue.enqueue(Mono.just(new CustomerDto(1, null))))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        assertThat(batches).isEmpty();
+    }
+
+    private Batch nextBatch() throws InterruptedException {
+        Batch batch = batches.poll(5, TimeUnit.SECONDS);
+        assertThat(batch).isNotNull();
+        return batch;
+    }
+
+    private record Batch(List<CustomerDto> customers, String thread, Sinks.One<BulkInsertDto> done) {
+        void complete() {
+            done.tryEmitValue(new BulkInsertDto(customers.size(), 0));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.codec.LengthDelimited;
+import com.chetra.reactivespring.dto.CustomerDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LengthDelimitedCodecTest {
+    private static final ResolvableType CUSTOMER = ResolvableType.forClass(CustomerDto.class);
+
+    /**
+     * Frames are reassembled no matter where the transport splits the body
+     * */
+    @Test
+    void decodeAcrossBuffers() {
+        List<CustomerDto> customers = List.of(new CustomerDto(1, "Dara"), new CustomerDto(2, "x".repeat(300)));
+        byte[] body = encode(customers);
+
+        for (int chunk = 1; chunk <= body.length; chunk += 7) {
+            StepVerifier.create(decode(body, chunk))
+                    .expectNextSequence(customers)
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    void rejectTruncatedFrame() {
+        byte[] body = encode(List.of(new CustomerDto(1, "Dara")));
+        byte[] truncated = Arrays.copyOf(body, body.length - 1);
+
+        StepVerifier.create(decode(truncated, 4))
+                .expectError(DecodingException.class)
+                .verify();
+    }
+
+    private static byte[] encode(List<CustomerDto> customers) {
+        DataBuffer joined = DataBufferUtils.join(LengthDelimited.cborEncoder().encode(Flux.fromIterable(customers),
+                DefaultDataBufferFactory.sharedInstance, CUSTOMER, LengthDelimited.CBOR_STREAM, null)).block();
+        byte[] body = new byte[joined.readableByteCount()];
+        joined.read(body);
+        return body;
+    }
+
+    private static Flux<Object> decode(byte[] body, int chunk) {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < body.length; offset += chunk) {
+            byte[] part = Arrays.copyOfRange(body, offset, Math.min(body.length, offset + chunk));
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(part));
+        }
+        return LengthDelimited.cborDecoder().decode(Flux.fromIterable(buffers), CUSTOMER, LengthDelimited.CBOR_STREAM, null);
+    }
+}
@@ -0,0 +1,42 @@
+package com.chetra.reactivespring;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+@AutoConfigureObservability
+public class MetricsEndpointTest {
+    @Autowired
+    private WebTestClient client;
+
+    /**
+     * Route, service, store, cache and scheduler meters are all scraped from one endpoint
+     * */
+    @Test
+    void prometheusScrape() {
+        client.get().uri("/customer/1").exchange().expectStatus().isOk();
+        client.get().uri("/customer").exchange().expectStatus().isOk();
+
+        String scrape = client.get().uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(scrape)
+                .contains("http_server_requests_seconds_count{error=\"none\",exception=\"none\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/customer/{id}\"")
+                .contains("customer_service_duration_seconds_count{operation=\"getCustomerById\",outcome=\"success\"")
+                .contains("customer_dao_in_flight{operation=\"get50Customers\"")
+                .contains("cache_gets_total{cache=\"customers\"")
+                .contains("customer_scheduler_")
+                .contains("customer_execution_strategy{strategy=\"inline\"");
+    }
+}
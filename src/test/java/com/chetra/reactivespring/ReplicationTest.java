@@ -0,0 +1,161 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.replication.CustomerFollower;
+import com.chetra.reactivespring.replication.ReplicationFilter;
+import com.chetra.reactivespring.service.CustomerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A leader and a follower on localhost ports, the follower applying the leader's replication log
+ * */
+public class ReplicationTest {
+    private static String leaderUrl;
+    private static ConfigurableApplicationContext leader;
+    private static ConfigurableApplicationContext follower;
+    private static WebTestClient leaderClient;
+    private static WebTestClient followerClient;
+
+    @BeforeAll
+    static void start() throws IOException {
+        int leaderPort = freePort();
+        int followerPort = freePort();
+        leaderUrl = "http://localhost:" + leaderPort;
+        leader = new SpringApplicationBuilder(ReactiveSpringApplication.class).run(
+                "--server.port=" + leaderPort,
+                "--customer.replication.role=leader");
+        follower = new SpringApplicationBuilder(ReactiveSpringApplication.class).run(
+                "--server.port=" + followerPort,
+                "--customer.replication.role=follower",
+                "--customer.replication.leader=" + leaderUrl,
+                "--customer.replication.read-your-writes-timeout=5s");
+        leaderClient = WebTestClient.bindToServer().baseUrl(leaderUrl).build();
+        followerClient = WebTestClient.bindToServer().baseUrl("http://localhost:" + followerPort).build();
+    }
+
+    @AfterAll
+    static void stop() {
+        follower.close();
+        leader.close();
+    }
+
+    /**
+     * The follower starts empty and gets the leader's customers from the snapshot
+     * */
+    @Test
+    void followerServesLeaderCustomers() {
+        String token = leader.getBean(CustomerService.class).getReplicationToken();
+        followerClient.get().uri("/customer/7")
+                .header(ReplicationFilter.POSITION_HEADER, token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(7, "Customer7"));
+    }
+
+    /**
+     * A read carrying the position of a write is answered once the follower applied it,
+     * enqueued writes have no position to carry
+     * */
+    @Test
+    void readsSeeOwnWrites() {
+        String token = leaderClient.post().uri("/customer")
+                .bodyValue(new CustomerDto(1_000, "Dara"))
+                .exchange()
+                .expectStatus().isCreated()
+                .returnResult(CustomerDto.class)
+                .getResponseHeaders()
+                .getFirst(ReplicationFilter.POSITION_HEADER);
+        assertThat(token).isNotNull();
+
+        followerClient.get().uri("/customer/1000")
+                .header(ReplicationFilter.POSITION_HEADER, token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(CustomerDto.class)
+                .isEqualTo(new CustomerDto(1_000, "Dara"));
+
+        token = leaderClient.post().uri("/customer/_bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(IntStream.range(2_000, 2_010)
+                        .mapToObj(id -> "{\"id\":" + id + ",\"name\":\"Bulk" + id + "\"}\n")
+                        .reduce("", String::concat))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(BulkInsertDto.class)
+                .getResponseHeaders()
+                .getFirst(ReplicationFilter.POSITION_HEADER);
+
+        followerClient.get().uri("/customer?ids=2000,2005,2009")
+                .header(ReplicationFilter.POSITION_HEADER, token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(List.of(new CustomerDto(2_000, "Bulk2000"), new CustomerDto(2_005, "Bulk2005"),
+                        new CustomerDto(2_009, "Bulk2009")));
+        leaderClient.post().uri("/customer?ack=enqueued")
+                .bodyValue(new CustomerDto(3_000, "Vanna"))
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().doesNotExist(ReplicationFilter.POSITION_HEADER);
+        assertThat(follower.getBean(CustomerFollower.class).getPosition())
+                .isGreaterThanOrEqualTo(Long.parseLong(token.substring(token.indexOf(':') + 1)));
+        assertThat(follower.getBean(MeterRegistry.class).get("customer.replication.lag").gauge().value())
+                .isGreaterThanOrEqualTo(0);
+    }
+
+    /**
+     * Positions the leader never reached, or of another run of it, are not waited on forever
+     * */
+    @Test
+    void unreachedPositionsTimeOut() {
+        String token = leader.getBean(CustomerService.class).getReplicationToken();
+        String epoch = token.substring(0, token.indexOf(':'));
+        followerClient.mutate().responseTimeout(Duration.ofSeconds(10)).build()
+                .get().uri("/customer/7")
+                .header(ReplicationFilter.POSITION_HEADER, epoch + ":" + Long.MAX_VALUE)
+                .exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().exists(HttpHeaders.RETRY_AFTER);
+
+        followerClient.get().uri("/customer/7")
+                .header(ReplicationFilter.POSITION_HEADER, "not-a-position")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void followerRedirectsWrites() {
+        followerClient.post().uri("/customer")
+                .bodyValue(new CustomerDto(null, "Vanna"))
+                .exchange()
+                .expectStatus().isTemporaryRedirect()
+                .expectHeader().location(leaderUrl + "/customer");
+        followerClient.get().uri("/customer/_replication")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
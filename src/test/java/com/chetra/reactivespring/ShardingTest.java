@@ -0,0 +1,216 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.dto.CustomerStatsDto;
+import com.chetra.reactivespring.dto.MultiGetDto;
+import com.chetra.reactivespring.shard.ShardRing;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Three instances on localhost ports sharing one ring, each owning part of the customers
+ * */
+public class ShardingTest {
+    private static final List<ConfigurableApplicationContext> members = new ArrayList<>();
+    private static final List<WebTestClient> clients = new ArrayList<>();
+    private static ShardRing ring;
+
+    @BeforeAll
+    static void startMembers() throws IOException {
+        List<String> urls = new ArrayList<>();
+        List<ServerSocket> reserved = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ServerSocket socket = new ServerSocket(0);
+            reserved.add(socket);
+            urls.add("http://localhost:" + socket.getLocalPort());
+        }
+        for (ServerSocket socket : reserved) {
+            socket.close();
+        }
+
+        for (int i = 0; i < urls.size(); i++) {
+            members.add(new SpringApplicationBuilder(ReactiveSpringApplication.class).run(
+                    "--server.port=" + reserved.get(i).getLocalPort(),
+                    "--customer.shard.enabled=true",
+                    "--customer.shard.self=" + urls.get(i),
+                    "--customer.shard.members=" + String.join(",", urls)));
+            clients.add(WebTestClient.bindToServer().baseUrl(urls.get(i)).build());
+        }
+        ring = members.get(0).getBean(ShardRing.class);
+    }
+
+    @AfterAll
+    static void stopMembers() {
+        members.forEach(ConfigurableApplicationContext::close);
+    }
+
+    /**
+     * Ids spread evenly and a new member only takes ids over, it never moves them between the others
+     * */
+    @Test
+    void ringSpreadsIds() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getShard().setEnabled(true);
+        properties.getShard().setSelf("http://a");
+        properties.getShard().setMembers(List.of("http://a", "http://b", "http://c"));
+        ShardRing three = new ShardRing(properties);
+        properties.getShard().setMembers(List.of("http://c", "http://d/", "http://b", "http://a"));
+        ShardRing four = new ShardRing(properties);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int id = 1; id <= 30_000; id++) {
+            owned.merge(three.owner(id), 1, Integer::sum);
+            assertThat(four.owner(id)).isIn(three.owner(id), "http://d");
+        }
+        assertThat(owned.values()).allSatisfy(count -> assertThat(count).isBetween(7_500, 12_500));
+    }
+
+    /**
+     * Sample customers are split between members rather than copied to each
+     * */
+    @Test
+    void samplesArePartitioned() {
+        long total = 0;
+        for (ConfigurableApplicationContext member : members) {
+            String self = member.getBean(ShardRing.class).self();
+            List<CustomerDto> local = member.getBean(CustomerDao.class).getCustomers(0, 50)
+                    .filter(customer -> customer.getId() <= 50)
+                    .collectList()
+                    .block();
+            assertThat(local).isNotEmpty().allMatch(customer -> ring.owner(customer.getId()).equals(self));
+            total += local.size();
+        }
+        assertThat(total).isEqualTo(50);
+    }
+
+    @Test
+    void lookupsReachOwners() {
+        for (WebTestClient client : clients) {
+            for (int id : new int[]{1, 17, 33, 50}) {
+                client.get().uri("/customer/{id}", id)
+                        .exchange()
+                        .expectStatus().isOk()
+                        .expectBody(CustomerDto.class)
+                        .isEqualTo(new CustomerDto(id, "Customer" + id));
+            }
+        }
+
+        clients.get(0).post().uri("/customer/_mget")
+                .bodyValue(new MultiGetDto(List.of(50, 1, 999, 25)))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(List.of(new CustomerDto(50, "Customer50"), new CustomerDto(1, "Customer1"),
+                        new CustomerDto(25, "Customer25")));
+    }
+
+    /**
+     * Listings gather every member's customers and merge them back into id order
+     * */
+    @Test
+    void listingsMerge() {
+        clients.get(1).get().uri("/customer?after=0&limit=50")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(IntStream.rangeClosed(1, 50).mapToObj(id -> new CustomerDto(id, "Customer" + id)).toList());
+
+        clients.get(2).get().uri("/customer?maxId=50&nameLike=*4?&fields=id")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(IntStream.rangeClosed(40, 49).mapToObj(id -> new CustomerDto(id, null)).toList());
+
+        clients.get(0).get().uri("/customer/search?prefix=customer4&limit=3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(CustomerDto.class)
+                .isEqualTo(List.of(new CustomerDto(4, "Customer4"), new CustomerDto(40, "Customer40"),
+                        new CustomerDto(41, "Customer41")));
+    }
+
+    /**
+     * Writes are applied by the owner of their id, inserts without one get an id owned by the member receiving them
+     * */
+    @Test
+    void writesLandOnOwners() {
+        clients.get(0).post().uri("/customer")
+                .bodyValue(new CustomerDto(1_000, "Dara"))
+                .exchange()
+                .expectStatus().isCreated();
+        ConfigurableApplicationContext owner = members.get(memberIndex(ring.owner(1_000)));
+        assertThat(owner.getBean(CustomerDao.class).getCustomerById(1_000).block())
+                .isEqualTo(new CustomerDto(1_000, "Dara"));
+
+        CustomerDto inserted = clients.get(2).post().uri("/customer")
+                .bodyValue(new CustomerDto(null, "Vanna"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(CustomerDto.class)
+                .returnResult()
+                .getResponseBody();
+        assertThat(ring.owner(inserted.getId())).isEqualTo(members.get(2).getBean(ShardRing.class).self());
+
+        clients.get(1).post().uri("/customer/_bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(IntStream.range(2_000, 2_010)
+                        .mapToObj(id -> "{\"id\":" + id + ",\"name\":\"Bulk" + id + "\"}\n")
+                        .reduce("", String::concat))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BulkInsertDto.class)
+                .isEqualTo(new BulkInsertDto(10, 0));
+        for (int id = 2_000; id < 2_010; id++) {
+            assertThat(members.get(memberIndex(ring.owner(id))).getBean(CustomerDao.class).getCustomerById(id).block())
+                    .isEqualTo(new CustomerDto(id, "Bulk" + id));
+        }
+    }
+
+    /**
+     * Any member answers stats for the whole ring
+     * */
+    @Test
+    void statsAddUp() {
+        CustomerStatsDto total = members.stream()
+                .map(member -> member.getBean(CustomerDao.class).getStats())
+                .reduce(CustomerStatsDto::plus)
+                .orElseThrow();
+        assertThat(total.getCount()).isGreaterThanOrEqualTo(50);
+
+        for (WebTestClient client : clients) {
+            client.get().uri("/customer/stats")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(CustomerStatsDto.class)
+                    .isEqualTo(total);
+        }
+    }
+
+    private static int memberIndex(String url) {
+        for (int i = 0; i < members.size(); i++) {
+            if (members.get(i).getBean(ShardRing.class).self().equals(url)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(url);
+    }
+}
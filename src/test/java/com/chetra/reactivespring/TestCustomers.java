@@ -0,0 +1,62 @@
+package com.chetra.reactivespring;
+
+import com.chetra.reactivespring.admission.AdmissionControl;
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.config.SchedulerConfig;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerJournal;
+import com.chetra.reactivespring.dao.CustomerSnapshot;
+import com.chetra.reactivespring.metrics.CustomerMetrics;
+import com.chetra.reactivespring.service.CustomerService;
+import com.chetra.reactivespring.service.CustomerServiceImpl;
+import com.chetra.reactivespring.service.CustomerWriteQueue;
+import com.chetra.reactivespring.shard.ShardClient;
+import com.chetra.reactivespring.shard.ShardRing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Wiring of the customer beans for tests that run without a Spring context
+ * */
+public final class TestCustomers {
+    private TestCustomers() {
+    }
+
+    public static CustomerMetrics metrics() {
+        return new CustomerMetrics(new SimpleMeterRegistry());
+    }
+
+    public static CustomerDao customerDao() {
+        return customerDao(CustomerJournal.NONE);
+    }
+
+    public static CustomerDao customerDao(CustomerJournal journal) {
+        return customerDao(journal, CustomerSnapshot.NONE);
+    }
+
+    public static CustomerDao customerDao(CustomerJournal journal, CustomerSnapshot snapshot) {
+        return customerDao(new CustomerProperties(), journal, snapshot);
+    }
+
+    public static CustomerDao customerDao(CustomerProperties properties, CustomerJournal journal, CustomerSnapshot snapshot) {
+        return new CustomerDao(properties, journal, snapshot, metrics(), SchedulerConfig.scheduler(properties.getExecution()),
+                new ShardRing(properties));
+    }
+
+    public static CustomerServiceImpl customerService(CustomerDao customerDao) {
+        return customerService(customerDao, new CustomerProperties());
+    }
+
+    public static CustomerServiceImpl customerService(CustomerDao customerDao, CustomerProperties properties) {
+        return new CustomerServiceImpl(customerDao, properties, metrics(), new ShardRing(properties),
+                new ShardClient(properties, WebClient.builder()));
+    }
+
+    public static CustomerWriteQueue writeQueue(CustomerService customerService) {
+        return new CustomerWriteQueue(new CustomerProperties(), customerService, metrics());
+    }
+
+    public static AdmissionControl admissionControl() {
+        return new AdmissionControl(new CustomerProperties(), metrics());
+    }
+}
@@ -0,0 +1,56 @@
+package com.chetra.reactivespring.benchmark;
+
+import com.chetra.reactivespring.TestCustomers;
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerJournal;
+import com.chetra.reactivespring.dao.CustomerSnapshot;
+import com.chetra.reactivespring.dto.CustomerDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    static CustomerDao customerDao(int size) {
+        return customerDao(size, CustomerProperties.Store.Mode.HEAP);
+    }
+
+    static CustomerDao customerDao(int size, CustomerProperties.Store.Mode mode) {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getStore().setMode(mode);
+        return customerDao(size, properties);
+    }
+
+    static CustomerDao customerDao(int size, CustomerProperties properties) {
+        CustomerDao customerDao = TestCustomers.customerDao(properties, CustomerJournal.NONE, CustomerSnapshot.NONE);
+        for (int from = 1; from <= size; from += 10_000) {
+            customerDao.saveCustomers(customers(from, Math.min(10_000, size - from + 1))).block();
+        }
+        return customerDao;
+    }
+
+    static List<CustomerDto> customers(int from, int count) {
+        List<CustomerDto> customers = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            customers.add(new CustomerDto(i, "Customer" + i));
+        }
+        return customers;
+    }
+
+    static List<CustomerDto> randomCustomers(int size, int count) {
+        List<CustomerDto> customers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = randomId(size);
+            customers.add(new CustomerDto(id, "Customer" + id));
+        }
+        return customers;
+    }
+
+    static int randomId(int size) {
+        return ThreadLocalRandom.current().nextInt(1, size + 1);
+    }
+}
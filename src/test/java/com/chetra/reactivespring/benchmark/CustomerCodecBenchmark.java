@@ -0,0 +1,117 @@
+package com.chetra.reactivespring.benchmark;
+
+import com.chetra.reactivespring.codec.LengthDelimited;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a page of customers in each negotiable format, reported per customer.
+ * Array formats encode the page as one value, the streaming formats one frame per customer.
+ * The encoded size per customer is printed once per trial
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerCodecBenchmark {
+    private static final int PAGE_SIZE = 100;
+    private static final ResolvableType CUSTOMER_TYPE = ResolvableType.forClass(CustomerDto.class);
+    private static final ResolvableType LIST_TYPE = ResolvableType.forClassWithGenerics(List.class, CustomerDto.class);
+
+    @Param({"json", "cbor", "smile", "cbor-stream", "smile-stream"})
+    String format;
+
+    Encoder<Object> encoder;
+    Decoder<Object> decoder;
+    MimeType mimeType;
+    boolean streaming;
+    NettyDataBufferFactory bufferFactory;
+    List<CustomerDto> customers;
+    byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        switch (format) {
+            case "cbor" -> codec(new Jackson2CborEncoder(new CBORMapper(), MediaType.APPLICATION_CBOR),
+                    new Jackson2CborDecoder(new CBORMapper(), MediaType.APPLICATION_CBOR), MediaType.APPLICATION_CBOR);
+            case "smile" -> codec(new Jackson2SmileEncoder(), new Jackson2SmileDecoder(),
+                    new MediaType("application", "x-jackson-smile"));
+            case "cbor-stream" -> codec(LengthDelimited.cborEncoder(), LengthDelimited.cborDecoder(),
+                    LengthDelimited.CBOR_STREAM);
+            case "smile-stream" -> codec(LengthDelimited.smileEncoder(), LengthDelimited.smileDecoder(),
+                    LengthDelimited.SMILE_STREAM);
+            default -> codec(new Jackson2JsonEncoder(), new Jackson2JsonDecoder(), MediaType.APPLICATION_JSON);
+        }
+        streaming = format.endsWith("-stream");
+        bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+        customers = BenchmarkData.customers(1, PAGE_SIZE);
+
+        DataBuffer buffer = DataBufferUtils.join(encodePage(DefaultDataBufferFactory.sharedInstance)).block();
+        encoded = new byte[buffer.readableByteCount()];
+        buffer.read(encoded);
+        System.out.printf("%n%s: %.1f bytes per customer%n", format, (double) encoded.length / PAGE_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public int encode() {
+        return encodePage(bufferFactory)
+                .map(buffer -> {
+                    int size = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return size;
+                })
+                .reduce(0, Integer::sum)
+                .block();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public Object decode() {
+        Mono<DataBuffer> body = Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap(encoded));
+        if (streaming) {
+            return decoder.decode(body, CUSTOMER_TYPE, mimeType, Map.of()).collectList().block();
+        }
+        return decoder.decodeToMono(body, LIST_TYPE, mimeType, Map.of()).block();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void codec(Encoder<?> encoder, Decoder<?> decoder, MimeType mimeType) {
+        this.encoder = (Encoder<Object>) encoder;
+        this.decoder = (Decoder<Object>) decoder;
+        this.mimeType = mimeType;
+    }
+
+    private Flux<DataBuffer> encodePage(DataBufferFactory factory) {
+        if (streaming) {
+            return encoder.encode(Flux.fromIterable(customers), factory, CUSTOMER_TYPE, mimeType, Map.of());
+        }
+        return Flux.just(encoder.encodeValue(customers, factory, LIST_TYPE, mimeType, Map.of()));
+    }
+}
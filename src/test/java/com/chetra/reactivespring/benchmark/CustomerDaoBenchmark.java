@@ -0,0 +1,108 @@
+package com.chetra.reactivespring.benchmark;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dao.CustomerQuery;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store level lookups, listing, filtered scans and bulk inserts across dataset sizes, thread counts and store modes
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerDaoBenchmark {
+    private static final CustomerQuery FILTER = new CustomerQuery(Integer.MIN_VALUE, Integer.MAX_VALUE,
+            "*7?", false);
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({"HEAP", "OFF_HEAP"})
+    CustomerProperties.Store.Mode mode;
+
+    CustomerDao customerDao;
+
+    @Setup
+    public void setUp() {
+        customerDao = BenchmarkData.customerDao(size, mode);
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        List<CustomerDto> customers;
+
+        @Setup
+        public void setUp(CustomerDaoBenchmark benchmark) {
+            customers = BenchmarkData.randomCustomers(benchmark.size, 1000);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CustomerDto getCustomerById() {
+        return customerDao.getCustomerById(BenchmarkData.randomId(size)).block();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CustomerDto getCustomerByIdContended() {
+        return customerDao.getCustomerById(BenchmarkData.randomId(size)).block();
+    }
+
+    @Benchmark
+    public Long pageOf100() {
+        return customerDao.getCustomers(BenchmarkData.randomId(size), 100).count().block();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Long listAll() {
+        return customerDao.get50Customers().count().block();
+    }
+
+    /**
+     * Full scan filtering on a name glob without projecting names, sequential against parallel rails
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Long scanFiltered() {
+        return customerDao.scanCustomers(FILTER, Integer.MAX_VALUE, false, true).count().block();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Long scanFilteredParallel() {
+        return customerDao.scanCustomers(FILTER, Integer.MAX_VALUE, true, true).count().block();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Long scanFilteredParallelUnordered() {
+        return customerDao.scanCustomers(FILTER, Integer.MAX_VALUE, true, false).count().block();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BulkInsertDto bulkInsert1000(Batch batch) {
+        return customerDao.saveCustomers(batch.customers).block();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BulkInsertDto bulkInsert1000Contended(Batch batch) {
+        return customerDao.saveCustomers(batch.customers).block();
+    }
+}
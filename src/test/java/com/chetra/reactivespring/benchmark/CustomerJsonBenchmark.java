@@ -0,0 +1,60 @@
+package com.chetra.reactivespring.benchmark;
+
+import com.chetra.reactivespring.codec.CustomerJsonEncoder;
+import com.chetra.reactivespring.dto.CustomerDto;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a customer read into a pooled Netty buffer.
+ * Run with -prof gc to compare allocation per response
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerJsonBenchmark {
+    private static final ResolvableType CUSTOMER_TYPE = ResolvableType.forClass(CustomerDto.class);
+
+    @Param({"jackson", "direct"})
+    String encoder;
+
+    Encoder<CustomerDto> customerEncoder;
+    NettyDataBufferFactory bufferFactory;
+    List<CustomerDto> customers;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        customerEncoder = switch (encoder) {
+            case "direct" -> new CustomerJsonEncoder();
+            default -> (Encoder<CustomerDto>) (Encoder<?>) new Jackson2JsonEncoder();
+        };
+        bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+        customers = BenchmarkData.customers(1, 1000);
+    }
+
+    @Benchmark
+    public int encodeValue() {
+        CustomerDto customer = customers.get(ThreadLocalRandom.current().nextInt(customers.size()));
+        DataBuffer buffer = customerEncoder.encodeValue(
+                customer, bufferFactory, CUSTOMER_TYPE, MediaType.APPLICATION_JSON, Map.of());
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+}
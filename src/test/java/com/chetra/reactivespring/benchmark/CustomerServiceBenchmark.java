@@ -0,0 +1,71 @@
+package com.chetra.reactivespring.benchmark;
+
+import com.chetra.reactivespring.TestCustomers;
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dto.BulkInsertDto;
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.chetra.reactivespring.service.CachingCustomerService;
+import com.chetra.reactivespring.service.CustomerService;
+import com.chetra.reactivespring.service.CustomerServiceImpl;
+import com.chetra.reactivespring.shard.ShardRing;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service level paths with and without the read-through cache.
+ * Lookups are skewed, 90% of them hit 1% of the ids
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerServiceBenchmark {
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"uncached", "cached"})
+    String service;
+
+    CustomerService customerService;
+    List<CustomerDto> batch;
+
+    @Setup
+    public void setUp() {
+        CustomerServiceImpl customerServiceImpl = TestCustomers.customerService(BenchmarkData.customerDao(size));
+        customerService = service.equals("cached")
+                ? new CachingCustomerService(customerServiceImpl, new CustomerProperties(), TestCustomers.metrics(),
+                        new ShardRing(new CustomerProperties()))
+                : customerServiceImpl;
+        batch = BenchmarkData.randomCustomers(size, 10_000);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CustomerDto getCustomerById() {
+        return customerService.getCustomerById(skewedId()).block();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CustomerDto getCustomerByIdContended() {
+        return customerService.getCustomerById(skewedId()).block();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public BulkInsertDto addCustomers10000() {
+        return customerService.addCustomers(Flux.fromIterable(batch)).block();
+    }
+
+    private int skewedId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int range = random.nextInt(10) == 0 ? size : Math.max(1, size / 100);
+        return random.nextInt(1, range + 1);
+    }
+}
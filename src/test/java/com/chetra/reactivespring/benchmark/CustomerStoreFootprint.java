@@ -0,0 +1,56 @@
+package com.chetra.reactivespring.benchmark;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerStore;
+import com.chetra.reactivespring.dto.CustomerDto;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measured heap and direct memory per customer for each store mode, next to what the store reports.
+ * mvn -Pbenchmark test -Dbenchmark.main=com.chetra.reactivespring.benchmark.CustomerStoreFootprint -Dbenchmark.args=1000000
+ * */
+public final class CustomerStoreFootprint {
+    private CustomerStoreFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-9s %12s %14s %16s %16s %16s%n",
+                "mode", "customers", "heap B/cust", "direct B/cust", "reported heap", "reported direct");
+        for (CustomerProperties.Store.Mode mode : CustomerProperties.Store.Mode.values()) {
+            long heapBefore = usedHeap();
+            long directBefore = usedDirect();
+
+            CustomerProperties.Store properties = new CustomerProperties.Store();
+            properties.setMode(mode);
+            CustomerStore store = CustomerStore.create(properties);
+            for (int id = 1; id <= size; id++) {
+                store.put(new CustomerDto(id, "Customer" + id), previous -> {
+                });
+            }
+
+            long heap = usedHeap() - heapBefore;
+            long direct = usedDirect() - directBefore;
+            CustomerStore.Footprint footprint = store.footprint();
+            System.out.printf("%-9s %12d %14.1f %16.1f %16.1f %16.1f%n", mode, size,
+                    (double) heap / size, (double) direct / size,
+                    (double) footprint.heapBytes() / size, (double) footprint.offHeapBytes() / size);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+}
@@ -0,0 +1,46 @@
+package com.chetra.reactivespring.benchmark;
+
+import com.chetra.reactivespring.config.CustomerProperties;
+import com.chetra.reactivespring.dao.CustomerDao;
+import com.chetra.reactivespring.dto.CustomerDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of each customer.execution.strategy for store reads,
+ * single lookups and pages of 100 with the store running every operation on the strategy's scheduler
+ * */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulerBenchmark {
+    private static final int SIZE = 100_000;
+
+    @Param({"INLINE", "PARALLEL", "BOUNDED_ELASTIC", "VIRTUAL_THREADS"})
+    CustomerProperties.Execution.Strategy strategy;
+
+    CustomerDao customerDao;
+
+    @Setup
+    public void setUp() {
+        CustomerProperties properties = new CustomerProperties();
+        properties.getExecution().setStrategy(strategy);
+        customerDao = BenchmarkData.customerDao(SIZE, properties);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CustomerDto getCustomerById() {
+        return customerDao.getCustomerById(BenchmarkData.randomId(SIZE)).block();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long pageOf100() {
+        return customerDao.getCustomers(BenchmarkData.randomId(SIZE - 100), 100).count().block();
+    }
+}
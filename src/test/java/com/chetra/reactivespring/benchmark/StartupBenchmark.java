@@ -0,0 +1,198 @@
+package com.chetra.reactivespring.benchmark;
+
+import com.chetra.reactivespring.ReactiveSpringApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Time from launching the application to its first successful GET /customer/{id}, measured from outside the JVM.
+ * Modes are the plain JVM, the Spring AOT initializers generated at build time, and AOT with an AppCDS archive.
+ * All of them run the plain application jar and its dependencies from target/lib, which the aot profile builds,
+ * a class-data-sharing archive can only hold classes loaded from jars on the class path.
+ * The aot profile also trains the archive with this class, by serving a few requests and shutting down.
+ * mvn -Paot package -DskipTests
+ * mvn -Pbenchmark test -Dbenchmark.main=com.chetra.reactivespring.benchmark.StartupBenchmark -Dbenchmark.args=10
+ * */
+public final class StartupBenchmark {
+    private static final Path TARGET = Path.of("target");
+    private static final Path ARCHIVE = TARGET.resolve("app-cds.jsa");
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+    private static final HttpClient CLIENT = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+
+    private enum Mode {
+        JVM,
+        AOT("-Dspring.aot.enabled=true"),
+        AOT_CDS("-Dspring.aot.enabled=true", "-XX:SharedArchiveFile=" + ARCHIVE);
+
+        private final List<String> options;
+
+        Mode(String... options) {
+            this.options = List.of(options);
+        }
+    }
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("train")) {
+            train();
+            return;
+        }
+
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        System.out.printf("%-8s %5s %10s %10s %10s%n", "mode", "runs", "min ms", "median ms", "max ms");
+        for (Mode mode : Mode.values()) {
+            if (mode == Mode.AOT_CDS && !Files.exists(ARCHIVE)) {
+                System.out.printf("%-8s skipped, %s is missing%n", mode, ARCHIVE);
+                continue;
+            }
+            // the first launch pays for reading the jars into the page cache
+            firstResponse(mode.options, mode.name().toLowerCase()).close();
+            long[] millis = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                try (Launch launch = firstResponse(mode.options, mode.name().toLowerCase())) {
+                    millis[run] = TimeUnit.NANOSECONDS.toMillis(launch.elapsed);
+                }
+            }
+            Arrays.sort(millis);
+            System.out.printf("%-8s %5d %10d %10d %10d%n", mode, runs, millis[0], millis[runs / 2], millis[runs - 1]);
+        }
+    }
+
+    /**
+     * Dump the classes loaded while starting up and serving the main routes into the archive
+     * */
+    private static void train() throws Exception {
+        Files.deleteIfExists(ARCHIVE);
+        List<String> options = new ArrayList<>(Mode.AOT.options);
+        options.add("-XX:ArchiveClassesAtExit=" + ARCHIVE);
+        try (Launch launch = firstResponse(options, "train")) {
+            for (String path : List.of("/customer", "/customer?after=10&limit=10", "/customer/search?prefix=customer1",
+                    "/customer?ids=1,2,3", "/customer/stats")) {
+                get(launch.port, path);
+            }
+            CLIENT.send(HttpRequest.newBuilder(URI.create("http://localhost:" + launch.port + "/customer"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Dara\"}"))
+                            .build(),
+                    HttpResponse.BodyHandlers.discarding());
+        }
+        if (!Files.exists(ARCHIVE)) {
+            throw new IllegalStateException("The training run did not write " + ARCHIVE + ", see target/startup-train.log");
+        }
+        System.out.printf("Wrote %s, %d KB%n", ARCHIVE, Files.size(ARCHIVE) / 1024);
+    }
+
+    /**
+     * Launch the application and poll it until GET /customer/1 succeeds, closing the launch shuts it down gracefully
+     * */
+    private static Launch firstResponse(List<String> options, String name) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(options);
+        command.addAll(List.of("-cp", classpath(), ReactiveSpringApplication.class.getName(), "--server.port=" + port));
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(TARGET.resolve("startup-" + name + ".log").toFile())
+                .start();
+        Launch launch = new Launch(process, port);
+        try {
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Exited with " + process.exitValue() + ", see target/startup-" + name + ".log");
+                }
+                if (System.nanoTime() - start > TIMEOUT.toNanos()) {
+                    throw new IllegalStateException("No response within " + TIMEOUT + ", see target/startup-" + name + ".log");
+                }
+                if (get(port, "/customer/1") == 200) {
+                    launch.elapsed = System.nanoTime() - start;
+                    return launch;
+                }
+                Thread.sleep(2);
+            }
+        } catch (Exception e) {
+            launch.close();
+            throw e;
+        }
+    }
+
+    private static int get(int port, String path) throws InterruptedException {
+        try {
+            return CLIENT.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            // not listening yet
+            return -1;
+        }
+    }
+
+    /**
+     * The plain jar first, then its dependencies in a fixed order, the archive only matches the class path it was dumped with
+     * */
+    private static String classpath() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (Stream<Path> jars = Files.list(TARGET)) {
+            jars.filter(jar -> jar.toString().endsWith(".jar") && !jar.toString().endsWith("-exec.jar"))
+                    .forEach(entries::add);
+        }
+        if (entries.size() != 1 || !Files.isDirectory(TARGET.resolve("lib"))) {
+            throw new IllegalStateException("Expected one application jar and target/lib, build with mvn -Paot package");
+        }
+        try (Stream<Path> jars = Files.list(TARGET.resolve("lib"))) {
+            jars.sorted().forEach(entries::add);
+        }
+        return entries.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static final class Launch implements AutoCloseable {
+        private final Process process;
+        private final int port;
+        private long elapsed;
+
+        private Launch(Process process, int port) {
+            this.process = process;
+            this.port = port;
+        }
+
+        /**
+         * SIGTERM so the JVM exits normally, which is also when it writes a class-data-sharing archive
+         * */
+        @Override
+        public void close() {
+            process.destroy();
+            try {
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.chetra.reactivespring.load;
+
+import com.chetra.reactivespring.dto.CustomerDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * End-to-end load run against the functional routes on a random port.
+ * Tuned with -Dload.rate, -Dload.duration, -Dload.concurrency and -Dload.max-p99-millis,
+ * the report is written to target/load-test/report.json
+ * */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CustomerLoadTest {
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void customerRoutes() throws IOException {
+        int rate = Integer.getInteger("load.rate", 200);
+        int concurrency = Integer.getInteger("load.concurrency", 64);
+        Duration duration = DurationStyle.detectAndParse(System.getProperty("load.duration", "10s"));
+        double maxP99 = Double.parseDouble(System.getProperty("load.max-p99-millis", "0"));
+
+        WebClient client = WebClient.create("http://localhost:" + port);
+        LoadGenerator generator = new LoadGenerator(List.of(
+                new LoadGenerator.Scenario("GET /customer/{id}", 80, () -> client.get()
+                        .uri("/customer/{id}", ThreadLocalRandom.current().nextInt(1, 51))
+                        .retrieve()
+                        .bodyToMono(CustomerDto.class)),
+                new LoadGenerator.Scenario("GET /customer", 5, () -> client.get()
+                        .uri("/customer")
+                        .retrieve()
+                        .bodyToFlux(CustomerDto.class)
+                        .then()),
+                new LoadGenerator.Scenario("POST /customer", 15, () -> client.post()
+                        .uri("/customer")
+                        .bodyValue(new CustomerDto(null, "Load" + ThreadLocalRandom.current().nextInt()))
+                        .retrieve()
+                        .bodyToMono(CustomerDto.class))
+        ));
+
+        // warm up the JIT and connection pool before the measured run
+        generator.run(rate, Duration.ofSeconds(2), concurrency);
+        LoadReport report = generator.run(rate, duration, concurrency);
+
+        File output = new File("target/load-test/report.json");
+        output.getParentFile().mkdirs();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(output, report);
+
+        report.endpoints().forEach((name, endpoint) -> {
+            assertThat(endpoint.errors()).as("errors on %s", name).isZero();
+            if (maxP99 > 0) {
+                assertThat(endpoint.p99()).as("p99 of %s", name).isLessThanOrEqualTo(maxP99);
+            }
+        });
+    }
+}
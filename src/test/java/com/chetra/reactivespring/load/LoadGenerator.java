@@ -0,0 +1,106 @@
+package com.chetra.reactivespring.load;
+
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Open-loop load generator.
+ * Requests are started on a fixed schedule whether or not earlier ones finished,
+ * latency is measured from the intended start so queueing is not hidden (no coordinated omission)
+ * */
+public class LoadGenerator {
+    private static final long MAX_LATENCY_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final List<Scenario> scenarios;
+    private final int totalWeight;
+
+    public LoadGenerator(List<Scenario> scenarios) {
+        this.scenarios = scenarios;
+        this.totalWeight = scenarios.stream().mapToInt(Scenario::weight).sum();
+    }
+
+    /**
+     * One kind of request in the mix, picked with probability weight / total weight
+     * */
+    public record Scenario(String name, int weight, Supplier<Mono<?>> request) {
+    }
+
+    public LoadReport run(int ratePerSecond, Duration duration, int concurrency) {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        scenarios.forEach(scenario -> stats.put(scenario.name(), new Stats()));
+
+        long periodNanos = 1_000_000_000L / ratePerSecond;
+        long ticks = duration.toNanos() / periodNanos;
+        long start = System.nanoTime();
+
+        Flux.interval(Duration.ofNanos(periodNanos))
+                .take(ticks)
+                .onBackpressureBuffer()
+                .flatMap(tick -> {
+                    Scenario scenario = pick();
+                    Stats scenarioStats = stats.get(scenario.name());
+                    long intendedStart = start + (tick + 1) * periodNanos;
+                    return scenario.request().get()
+                            .doOnSuccess(response -> scenarioStats.record(intendedStart, false))
+                            .onErrorResume(e -> {
+                                scenarioStats.record(intendedStart, true);
+                                return Mono.empty();
+                            });
+                }, concurrency)
+                .blockLast();
+
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        Map<String, LoadReport.Endpoint> endpoints = new LinkedHashMap<>();
+        stats.forEach((name, scenarioStats) -> endpoints.put(name, scenarioStats.report(elapsedSeconds)));
+        return new LoadReport(ratePerSecond, concurrency, elapsedSeconds, endpoints);
+    }
+
+    private Scenario pick() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Scenario scenario : scenarios) {
+            roll -= scenario.weight();
+            if (roll < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    private static class Stats {
+        private final Recorder recorder = new Recorder(MAX_LATENCY_NANOS, 3);
+        private final AtomicLong errors = new AtomicLong();
+
+        void record(long intendedStart, boolean error) {
+            recorder.recordValue(Math.min(System.nanoTime() - intendedStart, MAX_LATENCY_NANOS));
+            if (error) {
+                errors.incrementAndGet();
+            }
+        }
+
+        LoadReport.Endpoint report(double elapsedSeconds) {
+            var histogram = recorder.getIntervalHistogram();
+            return new LoadReport.Endpoint(
+                    histogram.getTotalCount(),
+                    errors.get(),
+                    histogram.getTotalCount() / elapsedSeconds,
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue())
+            );
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.chetra.reactivespring.load;
+
+import java.util.Map;
+
+/**
+ * Machine readable result of a load run, latencies are in milliseconds
+ * */
+public record LoadReport(int ratePerSecond, int concurrency, double elapsedSeconds, Map<String, Endpoint> endpoints) {
+
+    public record Endpoint(long count, long errors, double throughput,
+                           double p50, double p99, double p999, double max) {
+    }
+}